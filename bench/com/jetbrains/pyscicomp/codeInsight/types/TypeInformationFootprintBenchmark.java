@@ -0,0 +1,111 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jetbrains.pyscicomp.codeInsight.types;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import java.lang.reflect.Type;
+import java.util.*;
+
+/**
+ * Reports heap footprint of type information per 10k functions as created by Gson from JSON and after
+ * conversion into compact representation (see FunctionTypeInformation.copyOf()).
+ * <p/>
+ * Functions are generated to resemble numpy ones: type names and permissible values are taken from small
+ * pools and repeat across functions. Run with a fixed heap, e.g. -Xms512m -Xmx512m, for stable results.
+ * <p/>
+ * Usage: TypeInformationFootprintBenchmark [functionCount]
+ */
+public class TypeInformationFootprintBenchmark {
+
+  private static final int DEFAULT_FUNCTION_COUNT = 10000;
+  private static final Type DATA_TYPE = new TypeToken<List<FunctionTypeInformation>>() {
+  }.getType();
+
+  private static final String[] TYPES = {
+    "array_like", "ndarray", "int", "int, optional", "float", "bool, optional", "data-type, optional",
+    "{None, int}, optional", "scalar", "array_like, optional", "sequence of ints", "str"
+  };
+  private static final String[] PARAMETER_NAMES = {
+    "a", "b", "x", "axis", "dtype", "out", "order", "mode", "keepdims", "side", "kind", "casting"
+  };
+  private static final String[][] VALUES = {
+    {}, {}, {}, {"C", "F", "A"}, {"raise", "wrap", "clip"}, {"left", "right"},
+    {"quicksort", "mergesort", "heapsort"}, {"no", "equiv", "safe", "same_kind", "unsafe"}
+  };
+
+  public static void main(String[] args) {
+    int functionCount = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_FUNCTION_COUNT;
+    String json = new Gson().toJson(generate(functionCount));
+    System.out.println("Functions: " + functionCount + ", JSON: " + json.length() + " chars");
+
+    long before = getUsedMemory();
+    List<FunctionTypeInformation> parsed = new Gson().fromJson(json, DATA_TYPE);
+    long parsedFootprint = getUsedMemory() - before;
+    report("Gson", parsedFootprint, functionCount);
+
+    before = getUsedMemory();
+    List<FunctionTypeInformation> compact = new ArrayList<FunctionTypeInformation>(parsed.size());
+    for (FunctionTypeInformation function : parsed) {
+      compact.add(FunctionTypeInformation.copyOf(function));
+    }
+    // Keep the copies only, as the database does
+    parsed = null;
+    long compactFootprint = getUsedMemory() - before + parsedFootprint;
+    report("compact", compactFootprint, functionCount);
+
+    System.out.println("(" + compact.size() + ")");
+  }
+
+  private static List<FunctionTypeInformation> generate(int functionCount) {
+    Random random = new Random(0);
+    List<FunctionTypeInformation> functions = new ArrayList<FunctionTypeInformation>(functionCount);
+    for (int i = 0; i < functionCount; i++) {
+      int parameterCount = 1 + random.nextInt(8);
+      List<ParameterTypeInformation> parameters = new ArrayList<ParameterTypeInformation>(parameterCount);
+      for (int j = 0; j < parameterCount; j++) {
+        String[] values = VALUES[random.nextInt(VALUES.length)];
+        parameters.add(new ParameterTypeInformation(PARAMETER_NAMES[random.nextInt(PARAMETER_NAMES.length)],
+                                                    TYPES[random.nextInt(TYPES.length)],
+                                                    Arrays.asList(values)));
+      }
+      functions.add(new FunctionTypeInformation("numpy.module" + i % 50 + ".function" + i,
+                                                TYPES[random.nextInt(TYPES.length)], parameters));
+    }
+    return functions;
+  }
+
+  private static void report(String representation, long footprint, int functionCount) {
+    System.out.println(String.format("%-8s %10d bytes per 10k functions", representation,
+                                     footprint * 10000 / functionCount));
+  }
+
+  private static long getUsedMemory() {
+    Runtime runtime = Runtime.getRuntime();
+    long used = Long.MAX_VALUE;
+    // Collect until the heap stops shrinking
+    for (int i = 0; i < 10; i++) {
+      System.gc();
+      long current = runtime.totalMemory() - runtime.freeMemory();
+      if (current >= used) {
+        break;
+      }
+      used = current;
+    }
+    return used;
+  }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jetbrains.pyscicomp.documentation;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures throughput and allocation rate of docstring parsing phases over a corpus of docstrings. By default
+ * the corpus is a sample of numpy 1.6.2 docstrings kept next to the benchmark in the format of
+ * tools/dump-numpy-docstrings.py, a full dump made by the script can be specified instead. The corpus generated
+ * by {@link NumpyDocStringCorpus} is used with the --generated option.
+ * <p/>
+ * Allocations are measured per thread with com.sun.management.ThreadMXBean.getThreadAllocatedBytes() and
+ * reported as -1 on JVMs which don't support it.
+ * <p/>
+ * Usage: NumpyDocStringBenchmark [corpus.json | --generated]
+ */
+public class NumpyDocStringBenchmark {
+
+  private static final int WARMUP_ITERATIONS = 5;
+  private static final int MEASURED_ITERATIONS = 10;
+  // Small corpora are repeated, so that a single iteration takes measurable time
+  private static final int MIN_ITERATION_SIZE = 1000;
+  private static final String SAMPLE_CORPUS = "numpy_docstrings.json";
+  private static final String GENERATED_OPTION = "--generated";
+
+  private static class CorpusEntry {
+    private String name;
+    private String docstring;
+  }
+
+  private static abstract class Phase {
+
+    private final String myName;
+
+    private Phase(String name) {
+      myName = name;
+    }
+
+    abstract int run(String docString);
+  }
+
+  private static final Phase[] PHASES = {
+    new Phase("split") {
+      @Override
+      int run(String docString) {
+        NumpyDocStringScanner scanner = new NumpyDocStringScanner(docString);
+        scanner.scanLines();
+        return scanner.getLineCount();
+      }
+    },
+    new Phase("split + dedent") {
+      @Override
+      int run(String docString) {
+        NumpyDocStringScanner scanner = new NumpyDocStringScanner(docString);
+        scanner.scanLines();
+        scanner.dedent();
+        return scanner.getLineCount();
+      }
+    },
+    new Phase("full parse") {
+      @Override
+      int run(String docString) {
+        NumpyDocString parsed = NumpyDocString.parse(docString).getDocString();
+        if (parsed == null) {
+          return 0;
+        }
+        // Descriptions are built lazily, so they are requested here to include them into the parse
+        int result = 0;
+        for (DocStringParameter parameter : parsed.getParameters()) {
+          result += parameter.getDescription().length();
+        }
+        for (DocStringParameter parameter : parsed.getReturns()) {
+          result += parameter.getDescription().length();
+        }
+        return result;
+      }
+    },
+    new Phase("named parameter") {
+      @Override
+      int run(String docString) {
+        NumpyDocString parsed = NumpyDocString.parse(docString).getDocString();
+        DocStringParameter parameter = parsed != null ? parsed.getNamedParameter("axis") : null;
+        return parameter != null ? parameter.getType().length() : 0;
+      }
+    }
+  };
+
+  // Results of phases are accumulated here, so that the work cannot be optimized away
+  private static long ourSink = 0;
+
+  public static void main(String[] args) throws IOException {
+    List<String> corpus;
+    String corpusName;
+    if (args.length == 0) {
+      corpus = loadCorpus(new InputStreamReader(NumpyDocStringBenchmark.class.getResourceAsStream(SAMPLE_CORPUS), "UTF-8"));
+      corpusName = SAMPLE_CORPUS;
+    } else if (GENERATED_OPTION.equals(args[0])) {
+      corpus = NumpyDocStringCorpus.generate();
+      corpusName = "generated";
+    } else {
+      corpus = loadCorpus(new InputStreamReader(new FileInputStream(args[0]), "UTF-8"));
+      corpusName = args[0];
+    }
+    System.out.println("Corpus: " + corpus.size() + " docstrings (" + corpusName + ")");
+    List<String> repeated = new ArrayList<String>();
+    while (!corpus.isEmpty() && repeated.size() < MIN_ITERATION_SIZE) {
+      repeated.addAll(corpus);
+    }
+    corpus = repeated;
+    for (Phase phase : PHASES) {
+      for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+        runPhase(phase, corpus);
+      }
+      long totalTime = 0;
+      long totalAllocated = 0;
+      for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+        long allocatedBefore = getAllocatedBytes();
+        long timeBefore = System.nanoTime();
+        runPhase(phase, corpus);
+        totalTime += System.nanoTime() - timeBefore;
+        totalAllocated += getAllocatedBytes() - allocatedBefore;
+      }
+      long docStrings = (long) MEASURED_ITERATIONS * corpus.size();
+      System.out.println(String.format("%-16s %12.0f docstrings/s %10.0f ns/docstring %10d bytes/docstring",
+                                       phase.myName,
+                                       docStrings * 1e9 / totalTime,
+                                       (double) totalTime / docStrings,
+                                       getAllocatedBytes() >= 0 ? totalAllocated / docStrings : -1));
+    }
+    System.out.println("(" + ourSink + ")");
+  }
+
+  private static void runPhase(Phase phase, List<String> corpus) {
+    for (String docString : corpus) {
+      ourSink += phase.run(docString);
+    }
+  }
+
+  /**
+   * Returns the number of bytes allocated by the current thread or -1 if JVM doesn't support it.
+   */
+  private static long getAllocatedBytes() {
+    ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return -1;
+  }
+
+  private static List<String> loadCorpus(Reader corpusReader) throws IOException {
+    Reader reader = new BufferedReader(corpusReader);
+    try {
+      List<CorpusEntry> entries = new Gson().fromJson(reader, new TypeToken<List<CorpusEntry>>() {
+      }.getType());
+      List<String> docStrings = new ArrayList<String>(entries.size());
+      for (CorpusEntry entry : entries) {
+        docStrings.add(entry.docstring);
+      }
+      return docStrings;
+    }
+    finally {
+      reader.close();
+    }
+  }
+}
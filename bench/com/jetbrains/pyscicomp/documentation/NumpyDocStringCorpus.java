@@ -0,0 +1,123 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jetbrains.pyscicomp.documentation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates a reproducible corpus of docstrings shaped like ones of numpy routines: a signature, summary,
+ * sections of parameters and returns with typical types, including unions of permissible values, and the
+ * narrative sections following them. Used by {@link NumpyDocStringBenchmark} with the --generated option.
+ */
+class NumpyDocStringCorpus {
+
+  private static final long SEED = 1962;
+  private static final int DEFAULT_SIZE = 1500;
+
+  private static final String[] NAMES = {
+    "a", "axis", "dtype", "out", "keepdims", "order", "kind", "side", "mode", "ddof", "weights", "bins",
+    "copy", "subok", "ndmin", "fill_value", "casting", "method", "overwrite_input", "rowvar"
+  };
+  private static final String[] TYPES = {
+    "array_like", "int, optional", "data-type, optional", "ndarray, optional", "bool, optional",
+    "{'C', 'F', 'A'}, optional", "{'quicksort', 'mergesort', 'heapsort'}, optional", "{'left', 'right'}, optional",
+    "{'full', 'valid', 'same'}, optional", "scalar", "int or sequence of ints", "callable", "str, optional"
+  };
+  private static final String[] RETURN_TYPES = {
+    "ndarray", "scalar", "bool", "int", "tuple of ndarrays", "float or ndarray"
+  };
+  private static final String[] WORDS = {
+    "array", "input", "elements", "along", "the", "given", "axis", "values", "of", "returned", "result",
+    "is", "default", "if", "not", "specified", "otherwise", "flattened", "shape", "same", "as", "output"
+  };
+
+  // Static usage only
+  private NumpyDocStringCorpus() {
+  }
+
+  static List<String> generate() {
+    return generate(DEFAULT_SIZE);
+  }
+
+  static List<String> generate(int size) {
+    Random random = new Random(SEED);
+    List<String> docStrings = new ArrayList<String>(size);
+    for (int i = 0; i < size; i++) {
+      docStrings.add(generateDocString(random, "routine" + i));
+    }
+    return docStrings;
+  }
+
+  private static String generateDocString(Random random, String name) {
+    StringBuilder sb = new StringBuilder();
+    int parameterCount = 1 + random.nextInt(6);
+    List<String> parameters = new ArrayList<String>(parameterCount);
+    for (int i = 0; i < parameterCount; i++) {
+      String parameter = NAMES[random.nextInt(NAMES.length)];
+      if (!parameters.contains(parameter)) {
+        parameters.add(parameter);
+      }
+    }
+    sb.append(name).append('(');
+    for (int i = 0; i < parameters.size(); i++) {
+      sb.append(i > 0 ? ", " : "").append(parameters.get(i));
+    }
+    sb.append(")\n\n    ");
+    appendSentence(sb, random, 6 + random.nextInt(8), "    ");
+    sb.append("\n\n    Parameters\n    ----------\n");
+    for (String parameter : parameters) {
+      sb.append("    ").append(parameter).append(" : ").append(TYPES[random.nextInt(TYPES.length)]).append("\n        ");
+      appendSentence(sb, random, 8 + random.nextInt(20), "        ");
+      sb.append('\n');
+    }
+    int returnCount = random.nextInt(4) == 0 ? 2 : 1;
+    sb.append("\n    Returns\n    -------\n");
+    for (int i = 0; i < returnCount; i++) {
+      sb.append("    result").append(i > 0 ? String.valueOf(i) : "").append(" : ")
+        .append(RETURN_TYPES[random.nextInt(RETURN_TYPES.length)]).append("\n        ");
+      appendSentence(sb, random, 6 + random.nextInt(12), "        ");
+      sb.append('\n');
+    }
+    sb.append("\n    See Also\n    --------\n    routine").append(random.nextInt(100)).append(" : ");
+    appendSentence(sb, random, 5, "    ");
+    sb.append("\n\n    Notes\n    -----\n    ");
+    appendSentence(sb, random, 20 + random.nextInt(40), "    ");
+    sb.append("\n\n    Examples\n    --------\n    >>> np.").append(name).append("([1, 2, 3])\n    array([1, 2, 3])\n\n    ");
+    return sb.toString();
+  }
+
+  /**
+   * Appends sentence of random words wrapped at about 75 characters with specified indent.
+   */
+  private static void appendSentence(StringBuilder sb, Random random, int wordCount, String indent) {
+    int lineLength = indent.length();
+    for (int i = 0; i < wordCount; i++) {
+      String word = WORDS[random.nextInt(WORDS.length)];
+      if (lineLength + word.length() > 75) {
+        sb.append('\n').append(indent);
+        lineLength = indent.length();
+      } else if (i > 0) {
+        sb.append(' ');
+        lineLength++;
+      }
+      sb.append(word);
+      lineLength += word.length();
+    }
+    sb.append('.');
+  }
+}
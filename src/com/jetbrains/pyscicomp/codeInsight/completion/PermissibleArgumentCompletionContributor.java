@@ -17,53 +17,22 @@ package com.jetbrains.pyscicomp.codeInsight.completion;
 
 import com.intellij.codeInsight.completion.*;
 import com.intellij.codeInsight.lookup.LookupElementBuilder;
-import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.patterns.PlatformPatterns;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.util.PsiTreeUtil;
-import com.intellij.util.ArrayUtil;
 import com.intellij.util.PlatformIcons;
 import com.intellij.util.ProcessingContext;
-import com.jetbrains.pyscicomp.codeInsight.types.FunctionTypeInformation;
-import com.jetbrains.pyscicomp.codeInsight.types.ParameterTypeInformation;
-import com.jetbrains.pyscicomp.codeInsight.types.TypeInformationCache;
-import com.jetbrains.pyscicomp.documentation.DocStringParameter;
-import com.jetbrains.pyscicomp.documentation.NumpyDocString;
+import com.jetbrains.pyscicomp.util.PyArgumentBinding;
 import com.jetbrains.pyscicomp.util.PyFunctionUtils;
 import com.jetbrains.python.psi.*;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.Collections;
-import java.util.LinkedHashSet;
-import java.util.Set;
+import java.util.Collection;
 
 public class PermissibleArgumentCompletionContributor extends CompletionContributor {
 
-  private static interface PermissibleArgumentsHandler {
-
-    Set<String> handleTypeInformation(@NotNull FunctionTypeInformation typeInformation);
-
-    Set<String> handleDocString(@NotNull NumpyDocString docString);
-  }
-
-  private static void suggestPermissibleArgumentsForFunction(@NotNull PyFunction function,
-                                                             @NotNull PsiElement reference,
-                                                             CompletionResultSet resultSet,
-                                                             @NotNull PermissibleArgumentsHandler handler) {
-    Set<String> suggestions = new LinkedHashSet<String>();
-
-    String functionName = function.getQualifiedName();
-    FunctionTypeInformation typeInformation = TypeInformationCache.getInstance().getFunction(functionName);
-    if (typeInformation != null) {
-      suggestions.addAll(handler.handleTypeInformation(typeInformation));
-    }
-
-    NumpyDocString docString = NumpyDocString.forFunction(function, reference);
-    if (docString != null) {
-      suggestions.addAll(handler.handleDocString(docString));
-    }
-
+  private static void addSuggestions(@NotNull Collection<String> suggestions, CompletionResultSet resultSet) {
     for (String suggestion : suggestions) {
       LookupElementBuilder builder = LookupElementBuilder.create(suggestion).withIcon(PlatformIcons.PARAMETER_ICON);
       resultSet.addElement(PrioritizedLookupElement.withPriority(builder, 1.0));
@@ -71,96 +40,23 @@ public class PermissibleArgumentCompletionContributor extends CompletionContribu
   }
 
   private static void suggestVariantsForOrderedArgument(@NotNull PyFunction function,
-                                                        @NotNull PsiElement reference,
-                                                        int index,
+                                                        @NotNull PyCallExpression callExpression,
+                                                        @NotNull PyExpression argument,
                                                         CompletionResultSet resultSet) {
-    PyParameter[] parameters = function.getParameterList().getParameters();
-    if (index >= 0 && index < parameters.length) {
-      PyParameter parameter = parameters[index];
-      suggestVariantsForNamedArgument(function, reference, parameter.getName(), resultSet);
+    String parameterName = PyArgumentBinding.bind(callExpression, function).getParameterName(argument);
+    if (parameterName != null) {
+      suggestVariantsForNamedArgument(function, parameterName, resultSet);
     }
   }
 
   private static void suggestVariantsForNamedArgument(@NotNull PyFunction function,
-                                                      @NotNull PsiElement reference,
-                                                      final @Nullable String keyword,
+                                                      @Nullable String keyword,
                                                       CompletionResultSet resultSet) {
-    suggestPermissibleArgumentsForFunction(function, reference, resultSet, new PermissibleArgumentsHandler() {
-
-      private void processResult(Set<String> result, String value) {
-        StringBuilder sb = new StringBuilder(value);
-        StringUtil.quote(sb, '\'');
-        result.add(sb.toString());
-      }
-
-      @Override
-      public Set<String> handleTypeInformation(@NotNull FunctionTypeInformation typeInformation) {
-        if (keyword != null) {
-          ParameterTypeInformation parameter = typeInformation.getParameter(keyword);
-          if (parameter != null) {
-            Set<String> result = new LinkedHashSet<String>();
-            for (String value : parameter.getPermissibleValues()) {
-              processResult(result, value);
-            }
-            return result;
-          }
-        }
-        return Collections.emptySet();
-      }
-
-      @Override
-      public Set<String> handleDocString(@NotNull NumpyDocString docString) {
-        Set<String> result = new LinkedHashSet<String>();
-        if (keyword != null) {
-          DocStringParameter parameter = docString.getNamedParameter(keyword);
-          if (parameter != null) {
-            String type = parameter.getType();
-            for (String value : NumpyDocString.extractPermissibleArgumentsFromNumpyDocType(type)) {
-              processResult(result, value);
-            }
-          }
-        }
-        return result;
-      }
-    });
+    addSuggestions(PermissibleArgumentLookups.forFunction(function).getQuotedValues(keyword), resultSet);
   }
 
-  private static void suggestVariantsForAllNamedArguments(@NotNull PyFunction function,
-                                                          @NotNull PsiElement reference,
-                                                          CompletionResultSet resultSet) {
-    suggestPermissibleArgumentsForFunction(function, reference, resultSet, new PermissibleArgumentsHandler() {
-
-      private void processResult(Set<String> result, String keyword, String value) {
-        StringBuilder sb = new StringBuilder(value);
-        StringUtil.quote(sb, '\'');
-        sb.insert(0, '=');
-        sb.insert(0, keyword);
-        result.add(sb.toString());
-      }
-
-      @Override
-      public Set<String> handleTypeInformation(@NotNull FunctionTypeInformation typeInformation) {
-        Set<String> result = new LinkedHashSet<String>();
-        for (ParameterTypeInformation parameter : typeInformation.getParameters()) {
-          Set<String> values = parameter.getPermissibleValues();
-          for (String value : values) {
-            processResult(result, parameter.getName(), value);
-          }
-        }
-        return result;
-      }
-
-      @Override
-      public Set<String> handleDocString(@NotNull NumpyDocString docString) {
-        Set<String> result = new LinkedHashSet<String>();
-        for (DocStringParameter parameter : docString.getParameters()) {
-          for (String value : NumpyDocString.extractPermissibleArgumentsFromNumpyDocType(parameter.getType())) {
-            processResult(result, parameter.getName(), value);
-          }
-        }
-        return result;
-      }
-    });
+  private static void suggestVariantsForAllNamedArguments(@NotNull PyFunction function, CompletionResultSet resultSet) {
+    addSuggestions(PermissibleArgumentLookups.forFunction(function).getKeywordValues(), resultSet);
   }
 
   private static void addCompletionsForNamelessArgument(PsiElement element, CompletionResultSet resultSet) {
@@ -169,13 +65,13 @@ public class PermissibleArgumentCompletionContributor extends CompletionContribu
     if (callExpression != null && calleeFunction != null) {
 
       // Determine for which argument completion is called and show hints for this argument
-      int editingArgumentIndex = ArrayUtil.indexOf(callExpression.getArguments(), element.getParent());
-      if (editingArgumentIndex != -1) {
-        suggestVariantsForOrderedArgument(calleeFunction, callExpression, editingArgumentIndex, resultSet);
+      PsiElement editingArgument = element.getParent();
+      if (editingArgument instanceof PyExpression) {
+        suggestVariantsForOrderedArgument(calleeFunction, callExpression, (PyExpression) editingArgument, resultSet);
       }
 
       // Anyway show hints for arguments passed by keywords
-      suggestVariantsForAllNamedArguments(calleeFunction, callExpression, resultSet);
+      suggestVariantsForAllNamedArguments(calleeFunction, resultSet);
     }
   }
 
@@ -185,7 +81,7 @@ public class PermissibleArgumentCompletionContributor extends CompletionContribu
     PyFunction calleeFunction = PyFunctionUtils.getCalleeFunction(callExpression);
 
     if (calleeFunction != null && callExpression != null && keywordArgument != null) {
-      suggestVariantsForNamedArgument(calleeFunction, callExpression, keywordArgument.getKeyword(), resultSet);
+      suggestVariantsForNamedArgument(calleeFunction, keywordArgument.getKeyword(), resultSet);
     }
   }
 
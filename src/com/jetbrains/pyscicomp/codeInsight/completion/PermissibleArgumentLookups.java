@@ -0,0 +1,181 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jetbrains.pyscicomp.codeInsight.completion;
+
+import com.intellij.openapi.roots.ProjectRootManager;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.psi.util.CachedValue;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import com.intellij.util.Function;
+import com.jetbrains.pyscicomp.codeInsight.types.BundledTypeDatabase;
+import com.jetbrains.pyscicomp.codeInsight.types.FunctionTypeInformation;
+import com.jetbrains.pyscicomp.codeInsight.types.ParameterTypeInformation;
+import com.jetbrains.pyscicomp.codeInsight.types.TypeInformationCache;
+import com.jetbrains.pyscicomp.documentation.DocStringParameter;
+import com.jetbrains.pyscicomp.documentation.NumpyDocString;
+import com.jetbrains.pyscicomp.documentation.PermissibleValues;
+import com.jetbrains.pyscicomp.util.ParameterIndex;
+import com.jetbrains.python.psi.PyFunction;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * Ready-to-insert lookup strings for permissible arguments of a function: quoted values, e.g. 'left', for
+ * each parameter and values with keywords, e.g. side='left', for all parameters. Lookup strings are built
+ * once per function from the type database and the docstring and are cached until the file of function,
+ * the file of function its docstring redirects to, project roots or the type database change.
+ */
+class PermissibleArgumentLookups {
+
+  private static final Key<CachedValue<PermissibleArgumentLookups>> LOOKUPS_KEY =
+    Key.create("PermissibleArgumentLookups.LOOKUPS");
+
+  private static final Function<ParameterLookups, String> GET_NAME = new Function<ParameterLookups, String>() {
+    @Override
+    public String fun(ParameterLookups parameter) {
+      return parameter.myName;
+    }
+  };
+
+  private static class ParameterLookups {
+
+    private final String myName;
+    private final List<String> myQuotedValues;
+
+    private ParameterLookups(@NotNull String name, @NotNull List<String> quotedValues) {
+      myName = name;
+      myQuotedValues = quotedValues;
+    }
+  }
+
+  // Parameters of each source of type information in order of priority
+  private final List<ParameterIndex<ParameterLookups>> mySources = new ArrayList<ParameterIndex<ParameterLookups>>();
+  private final Set<String> myKeywordValues = new LinkedHashSet<String>();
+
+  private PermissibleArgumentLookups() {
+  }
+
+  @NotNull
+  static PermissibleArgumentLookups forFunction(@NotNull final PyFunction function) {
+    CachedValuesManager manager = CachedValuesManager.getManager(function.getProject());
+    return manager.getCachedValue(function, LOOKUPS_KEY, new CachedValueProvider<PermissibleArgumentLookups>() {
+      @Override
+      public Result<PermissibleArgumentLookups> compute() {
+        List<Object> dependencies = new ArrayList<Object>();
+        PermissibleArgumentLookups lookups = build(function, dependencies);
+        dependencies.add(function.getContainingFile());
+        dependencies.add(ProjectRootManager.getInstance(function.getProject()));
+        dependencies.add(TypeInformationCache.getInstance());
+        return Result.create(lookups, dependencies.toArray());
+      }
+    }, false);
+  }
+
+  /**
+   * @param dependencies Receives additional dependencies of the lookups, i.e. the file of redirect target.
+   */
+  @NotNull
+  private static PermissibleArgumentLookups build(@NotNull PyFunction function, @NotNull List<Object> dependencies) {
+    PermissibleArgumentLookups lookups = new PermissibleArgumentLookups();
+    FunctionTypeInformation typeInformation = TypeInformationCache.getInstance().getFunction(function);
+    if (typeInformation != null) {
+      lookups.addTypeInformation(typeInformation);
+    }
+
+    FunctionTypeInformation bundledFunction = BundledTypeDatabase.getInstance().getFunction(function);
+    if (bundledFunction != null) {
+      lookups.addTypeInformation(bundledFunction);
+    } else {
+      NumpyDocString docString = NumpyDocString.forFunction(function, function);
+      if (docString != null) {
+        lookups.addDocString(docString);
+        PyFunction owner = NumpyDocString.getDocStringOwner(function, function);
+        if (owner != function) {
+          dependencies.add(owner.getContainingFile());
+        }
+      }
+    }
+    return lookups;
+  }
+
+  private void addTypeInformation(@NotNull FunctionTypeInformation typeInformation) {
+    List<ParameterLookups> parameters = new ArrayList<ParameterLookups>();
+    for (ParameterTypeInformation parameter : typeInformation.getParameters()) {
+      if (parameter.getName() != null) {
+        parameters.add(createParameterLookups(parameter.getName(), parameter.getIndexedPermissibleValues()));
+      }
+    }
+    mySources.add(new ParameterIndex<ParameterLookups>(parameters, GET_NAME));
+  }
+
+  private void addDocString(@NotNull NumpyDocString docString) {
+    List<ParameterLookups> parameters = new ArrayList<ParameterLookups>();
+    for (DocStringParameter parameter : docString.getParameters()) {
+      parameters.add(createParameterLookups(parameter.getName(), parameter.getPermissibleValues()));
+    }
+    mySources.add(new ParameterIndex<ParameterLookups>(parameters, GET_NAME));
+  }
+
+  @NotNull
+  private ParameterLookups createParameterLookups(@NotNull String name, @NotNull PermissibleValues values) {
+    if (values.isEmpty()) {
+      return new ParameterLookups(name, Collections.<String>emptyList());
+    }
+    List<String> quotedValues = new ArrayList<String>(values.getValues().size());
+    for (String value : values.getValues()) {
+      StringBuilder sb = new StringBuilder(value);
+      StringUtil.quote(sb, '\'');
+      quotedValues.add(sb.toString());
+      myKeywordValues.add(name + "=" + sb);
+    }
+    return new ParameterLookups(name, quotedValues);
+  }
+
+  /**
+   * Returns quoted permissible values of parameter with specified name.
+   */
+  @NotNull
+  Collection<String> getQuotedValues(@Nullable String keyword) {
+    if (keyword == null) {
+      return Collections.emptyList();
+    }
+    Collection<String> result = Collections.emptyList();
+    for (ParameterIndex<ParameterLookups> source : mySources) {
+      ParameterLookups parameter = source.get(keyword);
+      if (parameter != null && !parameter.myQuotedValues.isEmpty()) {
+        if (result.isEmpty()) {
+          result = parameter.myQuotedValues;
+        } else {
+          result = new LinkedHashSet<String>(result);
+          result.addAll(parameter.myQuotedValues);
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns permissible values of all parameters with their keywords.
+   */
+  @NotNull
+  Collection<String> getKeywordValues() {
+    return Collections.unmodifiableSet(myKeywordValues);
+  }
+}
@@ -20,9 +20,9 @@ import com.intellij.codeInspection.LocalQuickFix;
 import com.intellij.codeInspection.ProblemDescriptor;
 import com.intellij.codeInspection.ProblemsHolder;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Key;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiElementVisitor;
-import com.intellij.psi.PsiPolyVariantReference;
 import com.jetbrains.pyscicomp.codeInsight.types.FunctionTypeInformation;
 import com.jetbrains.pyscicomp.codeInsight.ui.EditTypeInformationDialog;
 import com.jetbrains.python.inspections.PyInspection;
@@ -35,8 +35,16 @@ import org.jetbrains.annotations.Nls;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 public class NumpyUnknownReturnTypeInspection extends PyInspection {
 
+  // Whether return types of functions called in the inspected file are known. The return type may come from the
+  // docstring of another function the callee redirects to, which depends on the module of the call site; the session
+  // is per file, and all calls of a file share its module, so verdicts are keyed only by the callee
+  private static final Key<Map<PyFunction, Boolean>> VERDICTS_KEY = Key.create("NumpyUnknownReturnTypeInspection.VERDICTS");
+
   @NotNull
   @Override
   public PsiElementVisitor buildVisitor(@NotNull ProblemsHolder holder,
@@ -47,8 +55,16 @@ public class NumpyUnknownReturnTypeInspection extends PyInspection {
 
   public static class Visitor extends PyInspectionVisitor {
 
+    private final Map<PyFunction, Boolean> myVerdicts;
+
     public Visitor(@Nullable ProblemsHolder holder, @NotNull LocalInspectionToolSession session) {
       super(holder, session);
+      Map<PyFunction, Boolean> verdicts = session.getUserData(VERDICTS_KEY);
+      if (verdicts == null) {
+        // Visitors of the session may be built concurrently, all of them must share the same verdicts
+        verdicts = session.putUserDataIfAbsent(VERDICTS_KEY, new ConcurrentHashMap<PyFunction, Boolean>());
+      }
+      myVerdicts = verdicts;
     }
 
     @Override
@@ -56,26 +72,29 @@ public class NumpyUnknownReturnTypeInspection extends PyInspection {
       PyExpression callee = node.getCallee();
       if (callee instanceof PyReferenceExpression) {
         PyReferenceExpression referenceExpression = (PyReferenceExpression) callee;
-        PsiPolyVariantReference reference = referenceExpression.getReference();
-        PsiElement resolved = reference.resolve();
+        PsiElement resolved = referenceExpression.getReference().resolve();
         if (resolved instanceof PyFunction) {
           PyFunction function = (PyFunction) resolved;
-          if (function.isValid() && function.getReturnType(myTypeEvalContext, referenceExpression) == null) {
-            registerProblem(node, "Unknown return type",
-                            new AddTypeInformationFix(FunctionTypeInformation.forPyFunction(function, referenceExpression)));
+          Boolean hasKnownReturnType = myVerdicts.get(function);
+          if (hasKnownReturnType == null) {
+            hasKnownReturnType = !function.isValid() || function.getReturnType(myTypeEvalContext, referenceExpression) != null;
+            myVerdicts.put(function, hasKnownReturnType);
+          }
+          if (!hasKnownReturnType) {
+            registerProblem(node, "Unknown return type", AddTypeInformationFix.INSTANCE);
           }
         }
       }
     }
   }
 
+  /**
+   * Opens editor of type information for the called function. The function is resolved and its type
+   * information is built only when the fix is applied.
+   */
   private static class AddTypeInformationFix implements LocalQuickFix {
 
-    private final FunctionTypeInformation myTypeInformation;
-
-    public AddTypeInformationFix(@NotNull FunctionTypeInformation typeInformation) {
-      myTypeInformation = typeInformation;
-    }
+    private static final AddTypeInformationFix INSTANCE = new AddTypeInformationFix();
 
     @NotNull
     @Override
@@ -91,7 +110,17 @@ public class NumpyUnknownReturnTypeInspection extends PyInspection {
 
     @Override
     public void applyFix(@NotNull Project project, @NotNull ProblemDescriptor descriptor) {
-      new EditTypeInformationDialog(project, myTypeInformation).show();
+      PsiElement element = descriptor.getPsiElement();
+      if (element instanceof PyCallExpression) {
+        PyExpression callee = ((PyCallExpression) element).getCallee();
+        if (callee instanceof PyReferenceExpression) {
+          PsiElement resolved = ((PyReferenceExpression) callee).getReference().resolve();
+          if (resolved instanceof PyFunction) {
+            FunctionTypeInformation typeInformation = FunctionTypeInformation.forPyFunction((PyFunction) resolved, callee);
+            new EditTypeInformationDialog(project, typeInformation).show();
+          }
+        }
+      }
     }
   }
 
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jetbrains.pyscicomp.codeInsight.inspections;
+
+import com.intellij.analysis.AnalysisScope;
+import com.intellij.codeInspection.*;
+import com.intellij.codeInspection.reference.RefElement;
+import com.intellij.concurrency.JobLauncher;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiManager;
+import com.intellij.util.Processor;
+import com.jetbrains.pyscicomp.documentation.NumpyDocString;
+import com.jetbrains.pyscicomp.util.PyFunctionUtils;
+import com.jetbrains.python.PyBundle;
+import com.jetbrains.python.PythonFileType;
+import com.jetbrains.python.psi.PyCallExpression;
+import com.jetbrains.python.psi.PyFile;
+import com.jetbrains.python.psi.PyFunction;
+import com.jetbrains.python.psi.PyRecursiveElementVisitor;
+import org.jetbrains.annotations.Nls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Batch variant of {@link PermissibleArgumentCheckInspection} for offline inspection of whole projects.
+ * Files of the scope are checked in parallel one by one, so that PSI of only a few files is alive at a time.
+ * Each call is resolved once; tables of permissible values are built on the first call of each callee and
+ * shared by later calls, keyed by locations of the callee and of the function its docstring redirects to from
+ * the call site rather than by their PSI. Throughput is reported only to the log, it is meant for measuring
+ * offline runs and is of no use in the results view.
+ */
+public class PermissibleArgumentBatchInspection extends GlobalInspectionTool {
+
+  private static final Logger LOG = Logger.getInstance(PermissibleArgumentBatchInspection.class.getName());
+
+  @Override
+  public void runInspection(AnalysisScope scope,
+                            final InspectionManager manager,
+                            final GlobalInspectionContext globalContext,
+                            final ProblemDescriptionsProcessor processor) {
+    List<VirtualFile> files = collectFiles(scope);
+    final PsiManager psiManager = PsiManager.getInstance(manager.getProject());
+    ProgressIndicator indicator = ProgressManager.getInstance().getProgressIndicator();
+    long start = System.nanoTime();
+
+    final ConcurrentMap<String, PermissibleArgumentChecker.Table> tables =
+      new ConcurrentHashMap<String, PermissibleArgumentChecker.Table>();
+    // Problems are reported only once all files are checked, so that partial results aren't shown as complete
+    final ConcurrentMap<RefElement, CommonProblemDescriptor[]> problems =
+      new ConcurrentHashMap<RefElement, CommonProblemDescriptor[]>();
+    final AtomicInteger checkedCalls = new AtomicInteger();
+    boolean completed = JobLauncher.getInstance().invokeConcurrentlyUnderProgress(files, indicator, true, new Processor<VirtualFile>() {
+      @Override
+      public boolean process(final VirtualFile virtualFile) {
+        ApplicationManager.getApplication().runReadAction(new Runnable() {
+          @Override
+          public void run() {
+            PsiFile file = virtualFile.isValid() ? psiManager.findFile(virtualFile) : null;
+            if (file instanceof PyFile) {
+              checkFile((PyFile) file, tables, checkedCalls, manager, globalContext, problems);
+            }
+          }
+        });
+        return true;
+      }
+    });
+
+    long time = System.nanoTime() - start;
+    if (!completed) {
+      if (indicator != null) {
+        indicator.checkCanceled();
+      }
+      LOG.warn("Permissible argument check failed after " + checkedCalls.get() + " calls, no problems are reported");
+      return;
+    }
+    for (Map.Entry<RefElement, CommonProblemDescriptor[]> entry : problems.entrySet()) {
+      processor.addProblemElement(entry.getKey(), entry.getValue());
+    }
+    LOG.info(String.format("Checked %d calls of %d functions with permissible arguments in %d files: %.0f ms, %.0f calls/s",
+                           checkedCalls.get(), tables.size(), files.size(), time / 1e6,
+                           time > 0 ? checkedCalls.get() * 1e9 / time : 0.0));
+  }
+
+  private static void checkFile(@NotNull PyFile file,
+                                @NotNull final ConcurrentMap<String, PermissibleArgumentChecker.Table> tables,
+                                @NotNull final AtomicInteger checkedCalls,
+                                @NotNull final InspectionManager manager,
+                                @NotNull GlobalInspectionContext globalContext,
+                                @NotNull ConcurrentMap<RefElement, CommonProblemDescriptor[]> problems) {
+    final List<CommonProblemDescriptor> fileProblems = new ArrayList<CommonProblemDescriptor>();
+    final PermissibleArgumentChecker.ProblemSink sink = new PermissibleArgumentChecker.ProblemSink() {
+      @Override
+      public void registerProblem(@NotNull PsiElement element, @NotNull String message) {
+        fileProblems.add(manager.createProblemDescriptor(element, message, false, LocalQuickFix.EMPTY_ARRAY,
+                                                         ProblemHighlightType.GENERIC_ERROR_OR_WARNING));
+      }
+    };
+    file.accept(new PyRecursiveElementVisitor() {
+      @Override
+      public void visitPyCallExpression(PyCallExpression node) {
+        if (PermissibleArgumentChecker.hasStringLiteralArgument(node)) {
+          PyFunction function = PyFunctionUtils.getCalleeFunction(node);
+          String key = function != null ? getCalleeKey(function, node) : null;
+          if (key != null) {
+            PermissibleArgumentChecker.Table table = tables.get(key);
+            if (table == null) {
+              // Tables of the same callee built concurrently are equal, so any of them can be kept
+              table = PermissibleArgumentChecker.buildTable(function, node);
+              PermissibleArgumentChecker.Table previous = tables.putIfAbsent(key, table);
+              if (previous != null) {
+                table = previous;
+              }
+            }
+            if (!table.isEmpty()) {
+              PermissibleArgumentChecker.checkCall(node, function, table, sink);
+              checkedCalls.incrementAndGet();
+            }
+          }
+        }
+        super.visitPyCallExpression(node);
+      }
+    });
+    if (!fileProblems.isEmpty()) {
+      RefElement reference = globalContext.getRefManager().getReference(file);
+      if (reference != null) {
+        problems.put(reference, fileProblems.toArray(new CommonProblemDescriptor[fileProblems.size()]));
+      }
+    }
+  }
+
+  /**
+   * Returns key identifying the callee by its file and offset, which doesn't keep its PSI alive. Redirects of
+   * the callee docstring are resolved from the module or SDK of the call site, so the function providing the
+   * docstring is a part of the key as well.
+   */
+  @Nullable
+  private static String getCalleeKey(@NotNull PyFunction function, @NotNull PyCallExpression call) {
+    String key = getLocation(function);
+    PyFunction owner = NumpyDocString.getDocStringOwner(function, call);
+    if (key == null || owner == function) {
+      return key;
+    }
+    String ownerKey = getLocation(owner);
+    return ownerKey != null ? key + "->" + ownerKey : null;
+  }
+
+  @Nullable
+  private static String getLocation(@NotNull PyFunction function) {
+    PsiFile file = function.getContainingFile();
+    VirtualFile virtualFile = file != null ? file.getVirtualFile() : null;
+    return virtualFile != null ? virtualFile.getUrl() + "#" + function.getTextOffset() : null;
+  }
+
+  @NotNull
+  private static List<VirtualFile> collectFiles(@NotNull AnalysisScope scope) {
+    final List<VirtualFile> files = new ArrayList<VirtualFile>();
+    scope.accept(new Processor<VirtualFile>() {
+      @Override
+      public boolean process(VirtualFile file) {
+        if (file.getFileType() == PythonFileType.INSTANCE) {
+          files.add(file);
+        }
+        return true;
+      }
+    });
+    return files;
+  }
+
+  @Override
+  public boolean isGraphNeeded() {
+    return false;
+  }
+
+  @Nls
+  @NotNull
+  @Override
+  public String getGroupDisplayName() {
+    return PyBundle.message("INSP.GROUP.python");
+  }
+
+  @Nls
+  @NotNull
+  @Override
+  public String getDisplayName() {
+    return "Permissible Argument Check Inspection (Batch)";
+  }
+
+  @NotNull
+  @Override
+  public String getShortName() {
+    return "PermissibleArgumentBatchInspection";
+  }
+}
@@ -17,28 +17,27 @@ package com.jetbrains.pyscicomp.codeInsight.inspections;
 
 import com.intellij.codeInspection.LocalInspectionToolSession;
 import com.intellij.codeInspection.ProblemsHolder;
+import com.intellij.openapi.util.Key;
+import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiElementVisitor;
-import com.jetbrains.pyscicomp.codeInsight.types.FunctionTypeInformation;
-import com.jetbrains.pyscicomp.codeInsight.types.ParameterTypeInformation;
-import com.jetbrains.pyscicomp.codeInsight.types.TypeInformationCache;
-import com.jetbrains.pyscicomp.documentation.DocStringParameter;
-import com.jetbrains.pyscicomp.documentation.NumpyDocString;
 import com.jetbrains.pyscicomp.util.PyFunctionUtils;
 import com.jetbrains.python.inspections.PyInspection;
 import com.jetbrains.python.inspections.PyInspectionVisitor;
 import com.jetbrains.python.psi.PyCallExpression;
 import com.jetbrains.python.psi.PyFunction;
-import com.jetbrains.python.psi.PyStringLiteralExpression;
 import org.jetbrains.annotations.Nls;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.Collection;
-import java.util.List;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class PermissibleArgumentCheckInspection extends PyInspection {
 
+  // Tables of callees of the inspected file, functions without permissible values have empty tables
+  private static final Key<ConcurrentMap<PyFunction, PermissibleArgumentChecker.Table>> TABLES_KEY =
+    Key.create("PermissibleArgumentCheckInspection.TABLES");
+
   @NotNull
   @Override
   public PsiElementVisitor buildVisitor(@NotNull ProblemsHolder holder,
@@ -49,60 +48,46 @@ public class PermissibleArgumentCheckInspection extends PyInspection {
 
   public static class Visitor extends PyInspectionVisitor {
 
+    private final PermissibleArgumentChecker.ProblemSink mySink = new PermissibleArgumentChecker.ProblemSink() {
+      @Override
+      public void registerProblem(@NotNull PsiElement element, @NotNull String message) {
+        Visitor.this.registerProblem(element, message);
+      }
+    };
+
+    private final ConcurrentMap<PyFunction, PermissibleArgumentChecker.Table> myTables;
+
     public Visitor(@Nullable ProblemsHolder holder, @NotNull LocalInspectionToolSession session) {
       super(holder, session);
+      myTables = getTables(session);
     }
 
-    private void checkValues(@NotNull Set<String> values, @NotNull PyCallExpression callExpression, int parameterIndex, String parameterName) {
-      if (!values.isEmpty()) {
-        PyStringLiteralExpression passedString = callExpression.getArgument(parameterIndex, parameterName,
-                                                                            PyStringLiteralExpression.class);
-        if (passedString != null) {
-          if (!containsIgnoreCase(values, passedString.getStringValue())) {
-            registerProblem(passedString, "Argument must be one of " + values);
-          }
-        }
+    @Override
+    public void visitPyCallExpression(PyCallExpression node) {
+      if (!PermissibleArgumentChecker.hasStringLiteralArgument(node)) {
+        return;
       }
-    }
-
-    private void checkArguments(@NotNull PyCallExpression callExpression) {
-      PyFunction function = PyFunctionUtils.getCalleeFunction(callExpression);
+      PyFunction function = PyFunctionUtils.getCalleeFunction(node);
       if (function != null) {
-        NumpyDocString docString = NumpyDocString.forFunction(function, callExpression);
-        if (docString != null) {
-          List<DocStringParameter> parameters = docString.getParameters();
-          for (int i = 0; i < parameters.size(); i++) {
-            DocStringParameter parameter = parameters.get(i);
-            Set<String> values = NumpyDocString.extractPermissibleArgumentsFromNumpyDocType(parameter.getType());
-            checkValues(values, callExpression, i, parameter.getName());
-          }
+        PermissibleArgumentChecker.Table table = myTables.get(function);
+        if (table == null) {
+          table = PermissibleArgumentChecker.buildTable(function, node);
+          myTables.put(function, table);
         }
-
-        String functionName = function.getQualifiedName();
-        FunctionTypeInformation typeInformation = TypeInformationCache.getInstance().getFunction(functionName);
-        if (typeInformation != null) {
-          List<ParameterTypeInformation> parameters = typeInformation.getParameters();
-          for (int i = 0; i < parameters.size(); i++) {
-            ParameterTypeInformation parameter = parameters.get(i);
-            Set<String> values = parameter.getPermissibleValues();
-            checkValues(values, callExpression, i, parameter.getName());
-          }
+        if (!table.isEmpty()) {
+          PermissibleArgumentChecker.checkCall(node, function, table, mySink);
         }
       }
     }
 
-    private static boolean containsIgnoreCase(@NotNull Collection<String> collection, @NotNull String value) {
-      for (String element : collection) {
-        if (value.equalsIgnoreCase(element)) {
-          return true;
-        }
+    @NotNull
+    private static ConcurrentMap<PyFunction, PermissibleArgumentChecker.Table> getTables(@NotNull LocalInspectionToolSession session) {
+      ConcurrentMap<PyFunction, PermissibleArgumentChecker.Table> tables = session.getUserData(TABLES_KEY);
+      if (tables == null) {
+        // Visitors of the session may be built concurrently, all of them must share the same tables
+        tables = session.putUserDataIfAbsent(TABLES_KEY, new ConcurrentHashMap<PyFunction, PermissibleArgumentChecker.Table>());
       }
-      return false;
-    }
-
-    @Override
-    public void visitPyCallExpression(PyCallExpression node) {
-      checkArguments(node);
+      return tables;
     }
   }
 
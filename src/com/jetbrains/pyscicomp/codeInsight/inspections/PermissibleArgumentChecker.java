@@ -0,0 +1,177 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jetbrains.pyscicomp.codeInsight.inspections;
+
+import com.intellij.psi.PsiElement;
+import com.jetbrains.pyscicomp.codeInsight.types.BundledTypeDatabase;
+import com.jetbrains.pyscicomp.codeInsight.types.FunctionTypeInformation;
+import com.jetbrains.pyscicomp.codeInsight.types.ParameterTypeInformation;
+import com.jetbrains.pyscicomp.codeInsight.types.TypeInformationCache;
+import com.jetbrains.pyscicomp.documentation.DocStringParameter;
+import com.jetbrains.pyscicomp.documentation.NumpyDocString;
+import com.jetbrains.pyscicomp.documentation.PermissibleValues;
+import com.jetbrains.pyscicomp.util.PyArgumentBinding;
+import com.jetbrains.python.psi.*;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Checks string arguments of calls against permissible values of parameters of the callee. Permissible
+ * values of a callee are collected into a table once, so that the table can be shared by all calls of the
+ * function, e.g. by the batch inspection.
+ */
+class PermissibleArgumentChecker {
+
+  /**
+   * Receiver of problems found by the checker.
+   */
+  interface ProblemSink {
+    void registerProblem(@NotNull PsiElement element, @NotNull String message);
+  }
+
+  /**
+   * Permissible values of all parameters of a single function in order of checking.
+   */
+  static class Table {
+
+    private final List<ParameterValues> myParameters;
+
+    private Table(@NotNull List<ParameterValues> parameters) {
+      myParameters = parameters;
+    }
+
+    boolean isEmpty() {
+      return myParameters.isEmpty();
+    }
+  }
+
+  private static class ParameterValues {
+
+    private final int myIndex;
+    private final String myName;
+    private final PermissibleValues myValues;
+
+    private ParameterValues(int index, String name, @NotNull PermissibleValues values) {
+      myIndex = index;
+      myName = name;
+      myValues = values;
+    }
+  }
+
+  private static final Table EMPTY_TABLE = new Table(Collections.<ParameterValues>emptyList());
+
+  // Static usage only
+  private PermissibleArgumentChecker() {
+  }
+
+  /**
+   * Collects permissible values of parameters of specified function from the bundled database or the
+   * docstring, and then from the user type database.
+   *
+   * @param reference Element used to resolve redirects of the docstring.
+   */
+  @NotNull
+  static Table buildTable(@NotNull PyFunction function, @NotNull PsiElement reference) {
+    List<ParameterValues> parameters = new ArrayList<ParameterValues>();
+    FunctionTypeInformation bundledFunction = BundledTypeDatabase.getInstance().getFunction(function);
+    if (bundledFunction != null) {
+      addTypeInformation(parameters, bundledFunction);
+    } else {
+      NumpyDocString docString = NumpyDocString.forFunction(function, reference);
+      if (docString != null) {
+        List<DocStringParameter> docStringParameters = docString.getParameters();
+        for (int i = 0; i < docStringParameters.size(); i++) {
+          DocStringParameter parameter = docStringParameters.get(i);
+          PermissibleValues values = parameter.getPermissibleValues();
+          if (!values.isEmpty()) {
+            parameters.add(new ParameterValues(i, parameter.getName(), values));
+          }
+        }
+      }
+    }
+
+    FunctionTypeInformation typeInformation = TypeInformationCache.getInstance().getFunction(function);
+    if (typeInformation != null) {
+      addTypeInformation(parameters, typeInformation);
+    }
+    return parameters.isEmpty() ? EMPTY_TABLE : new Table(parameters);
+  }
+
+  private static void addTypeInformation(@NotNull List<ParameterValues> parameters,
+                                         @NotNull FunctionTypeInformation typeInformation) {
+    List<ParameterTypeInformation> typeParameters = typeInformation.getParameters();
+    for (int i = 0; i < typeParameters.size(); i++) {
+      ParameterTypeInformation parameter = typeParameters.get(i);
+      if (!parameter.getPermissibleValues().isEmpty()) {
+        parameters.add(new ParameterValues(i, parameter.getName(), parameter.getIndexedPermissibleValues()));
+      }
+    }
+  }
+
+  /**
+   * Cheap syntactic check whether the call can produce a problem at all, i.e. passes at least one string
+   * literal, positionally or by keyword. Calls without string literals don't need their callee resolved.
+   */
+  static boolean hasStringLiteralArgument(@NotNull PyCallExpression callExpression) {
+    PyArgumentList argumentList = callExpression.getArgumentList();
+    if (argumentList == null) {
+      return false;
+    }
+    for (PyExpression argument : argumentList.getArguments()) {
+      if (argument instanceof PyKeywordArgument) {
+        argument = ((PyKeywordArgument) argument).getValueExpression();
+      }
+      if (argument instanceof PyStringLiteralExpression) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Checks arguments of specified call against the table of its callee. Arguments are bound to parameters
+   * by the signature of callee; parameters missing in the signature, e.g. of functions declared with
+   * *args in skeletons, are matched by their position in the table source.
+   *
+   * @return Number of checked arguments.
+   */
+  static int checkCall(@NotNull PyCallExpression callExpression,
+                       @NotNull PyFunction function,
+                       @NotNull Table table,
+                       @NotNull ProblemSink sink) {
+    PyArgumentBinding binding = PyArgumentBinding.bind(callExpression, function);
+    int checked = 0;
+    for (ParameterValues parameter : table.myParameters) {
+      PyExpression argument;
+      if (parameter.myName != null && binding.hasParameter(parameter.myName)) {
+        argument = binding.getArgument(parameter.myName);
+      } else {
+        argument = callExpression.getArgument(parameter.myIndex, parameter.myName, PyStringLiteralExpression.class);
+      }
+      if (argument instanceof PyStringLiteralExpression) {
+        PyStringLiteralExpression passedString = (PyStringLiteralExpression) argument;
+        checked++;
+        if (!parameter.myValues.containsIgnoreCase(passedString.getStringValue())) {
+          sink.registerProblem(passedString, "Argument must be one of " + parameter.myValues);
+        }
+      }
+    }
+    return checked;
+  }
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jetbrains.pyscicomp.codeInsight.types;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.*;
+
+/**
+ * Read-only type database stored in compact binary format. Entries are decoded lazily on lookup, so
+ * opening a database costs only mapping of the file. Decoded entries are softly cached by their number, so
+ * an entry is returned as the same object together with its lazily built indices as long as it is in use.
+ * <p/>
+ * Lookups may be performed from several threads at once: the buffer is accessed only with absolute reads,
+ * and decoded strings and entries are immutable, so racy caching of them is harmless: at worst an entry is
+ * decoded twice and one of the copies wins.
+ * <p/>
+ * Layout of the file (all numbers are big-endian 32-bit integers, strings are referenced by their index
+ * in the string table, -1 stands for null string):
+ * <pre>
+ * header:    MAGIC, VERSION
+ * strings:   count, offset[count]
+ * index:     count, (nameId, entryOffset)[count] sorted by function name
+ * string:    length, UTF-8 bytes[length]
+ * entry:     returnTypeId, parameterCount, (nameId, typeId, valueCount, valueId[valueCount])[parameterCount]
+ * </pre>
+ */
+public class BinaryTypeDatabase {
+
+  private static final int MAGIC = 0x50595444;
+  private static final int VERSION = 1;
+  private static final int NULL_STRING = -1;
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private final ByteBuffer myBuffer;
+  private final int myStringCount;
+  private final int myStringOffsetsStart;
+  private final int myFunctionCount;
+  private final int myIndexStart;
+  private final String[] myStrings;
+  private final SoftReference<FunctionTypeInformation>[] myFunctions;
+
+  private BinaryTypeDatabase(@NotNull ByteBuffer buffer) throws IOException {
+    myBuffer = buffer;
+    if (buffer.limit() < 16 || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+      throw new IOException("Unsupported type database format");
+    }
+    myStringCount = buffer.getInt(8);
+    myStringOffsetsStart = 12;
+    myIndexStart = myStringOffsetsStart + 4 * myStringCount + 4;
+    myFunctionCount = buffer.getInt(myIndexStart - 4);
+    myStrings = new String[myStringCount];
+    //noinspection unchecked
+    myFunctions = new SoftReference[myFunctionCount];
+  }
+
+  /**
+   * Opens database stored in specified file. The file is mapped into memory and isn't read until its
+   * entries are requested.
+   */
+  @NotNull
+  public static BinaryTypeDatabase map(@NotNull File file) throws IOException {
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = randomAccessFile.getChannel();
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      return new BinaryTypeDatabase(buffer);
+    }
+    finally {
+      randomAccessFile.close();
+    }
+  }
+
+  /**
+   * Opens database stored in specified buffer, e.g. read from a resource.
+   */
+  @NotNull
+  public static BinaryTypeDatabase wrap(@NotNull ByteBuffer buffer) throws IOException {
+    return new BinaryTypeDatabase(buffer);
+  }
+
+  public int size() {
+    return myFunctionCount;
+  }
+
+  @Nullable
+  public FunctionTypeInformation getFunction(@Nullable String name) {
+    if (name == null) {
+      return null;
+    }
+    int low = 0;
+    int high = myFunctionCount - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      String middleName = getString(myBuffer.getInt(getIndexEntryOffset(middle)));
+      int comparison = middleName != null ? middleName.compareTo(name) : -1;
+      if (comparison < 0) {
+        low = middle + 1;
+      } else if (comparison > 0) {
+        high = middle - 1;
+      } else {
+        return getFunction(middle);
+      }
+    }
+    return null;
+  }
+
+  @NotNull
+  public List<FunctionTypeInformation> getAll() {
+    List<FunctionTypeInformation> functions = new ArrayList<FunctionTypeInformation>(myFunctionCount);
+    for (int i = 0; i < myFunctionCount; i++) {
+      functions.add(getFunction(i));
+    }
+    return functions;
+  }
+
+  @NotNull
+  private FunctionTypeInformation getFunction(int index) {
+    SoftReference<FunctionTypeInformation> reference = myFunctions[index];
+    FunctionTypeInformation function = reference != null ? reference.get() : null;
+    if (function == null) {
+      function = readFunction(index);
+      myFunctions[index] = new SoftReference<FunctionTypeInformation>(function);
+    }
+    return function;
+  }
+
+  private int getIndexEntryOffset(int index) {
+    return myIndexStart + 8 * index;
+  }
+
+  @NotNull
+  private FunctionTypeInformation readFunction(int index) {
+    int indexEntryOffset = getIndexEntryOffset(index);
+    String name = getString(myBuffer.getInt(indexEntryOffset));
+    int offset = myBuffer.getInt(indexEntryOffset + 4);
+
+    String returnType = getString(myBuffer.getInt(offset));
+    int parameterCount = myBuffer.getInt(offset + 4);
+    offset += 8;
+    List<ParameterTypeInformation> parameters = new ArrayList<ParameterTypeInformation>(parameterCount);
+    for (int i = 0; i < parameterCount; i++) {
+      String parameterName = getString(myBuffer.getInt(offset));
+      String parameterType = getString(myBuffer.getInt(offset + 4));
+      int valueCount = myBuffer.getInt(offset + 8);
+      offset += 12;
+      List<String> values = new ArrayList<String>(valueCount);
+      for (int j = 0; j < valueCount; j++) {
+        values.add(getString(myBuffer.getInt(offset)));
+        offset += 4;
+      }
+      parameters.add(new ParameterTypeInformation(parameterName, parameterType, values));
+    }
+    return new FunctionTypeInformation(name, returnType, parameters);
+  }
+
+  @Nullable
+  private String getString(int id) {
+    if (id == NULL_STRING) {
+      return null;
+    }
+    String result = myStrings[id];
+    if (result == null) {
+      int offset = myBuffer.getInt(myStringOffsetsStart + 4 * id);
+      byte[] bytes = new byte[myBuffer.getInt(offset)];
+      ByteBuffer buffer = myBuffer.duplicate();
+      buffer.position(offset + 4);
+      buffer.get(bytes);
+      result = new String(bytes, UTF_8);
+      myStrings[id] = result;
+    }
+    return result;
+  }
+
+  /**
+   * Writes specified functions into file in binary format.
+   */
+  public static void write(@NotNull Collection<FunctionTypeInformation> functions, @NotNull File file) throws IOException {
+    List<FunctionTypeInformation> sortedFunctions = new ArrayList<FunctionTypeInformation>();
+    for (FunctionTypeInformation function : functions) {
+      if (function.getName() != null) {
+        sortedFunctions.add(function);
+      }
+    }
+    Collections.sort(sortedFunctions, new Comparator<FunctionTypeInformation>() {
+      @Override
+      public int compare(FunctionTypeInformation o1, FunctionTypeInformation o2) {
+        return o1.getName().compareTo(o2.getName());
+      }
+    });
+
+    StringTable strings = new StringTable();
+    for (FunctionTypeInformation function : sortedFunctions) {
+      strings.add(function.getName());
+      strings.add(function.getReturnType());
+      for (ParameterTypeInformation parameter : function.getParameters()) {
+        strings.add(parameter.getName());
+        strings.add(parameter.getType());
+        for (String value : parameter.getPermissibleValues()) {
+          strings.add(value);
+        }
+      }
+    }
+
+    int offset = 12 + 4 * strings.size() + 4 + 8 * sortedFunctions.size();
+    int[] stringOffsets = new int[strings.size()];
+    for (int i = 0; i < strings.size(); i++) {
+      stringOffsets[i] = offset;
+      offset += 4 + strings.getBytes(i).length;
+    }
+    int[] entryOffsets = new int[sortedFunctions.size()];
+    for (int i = 0; i < sortedFunctions.size(); i++) {
+      entryOffsets[i] = offset;
+      offset += 8;
+      for (ParameterTypeInformation parameter : sortedFunctions.get(i).getParameters()) {
+        offset += 12 + 4 * parameter.getPermissibleValues().size();
+      }
+    }
+
+    DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+    try {
+      output.writeInt(MAGIC);
+      output.writeInt(VERSION);
+      output.writeInt(strings.size());
+      for (int stringOffset : stringOffsets) {
+        output.writeInt(stringOffset);
+      }
+      output.writeInt(sortedFunctions.size());
+      for (int i = 0; i < sortedFunctions.size(); i++) {
+        output.writeInt(strings.getId(sortedFunctions.get(i).getName()));
+        output.writeInt(entryOffsets[i]);
+      }
+      for (int i = 0; i < strings.size(); i++) {
+        byte[] bytes = strings.getBytes(i);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+      }
+      for (FunctionTypeInformation function : sortedFunctions) {
+        output.writeInt(strings.getId(function.getReturnType()));
+        output.writeInt(function.getParameters().size());
+        for (ParameterTypeInformation parameter : function.getParameters()) {
+          output.writeInt(strings.getId(parameter.getName()));
+          output.writeInt(strings.getId(parameter.getType()));
+          output.writeInt(parameter.getPermissibleValues().size());
+          for (String value : parameter.getPermissibleValues()) {
+            output.writeInt(strings.getId(value));
+          }
+        }
+      }
+    }
+    finally {
+      output.close();
+    }
+  }
+
+  private static class StringTable {
+
+    private final Map<String, Integer> myIds = new HashMap<String, Integer>();
+    private final List<byte[]> myBytes = new ArrayList<byte[]>();
+
+    private void add(@Nullable String value) {
+      if (value != null && !myIds.containsKey(value)) {
+        myIds.put(value, myBytes.size());
+        myBytes.add(value.getBytes(UTF_8));
+      }
+    }
+
+    private int getId(@Nullable String value) {
+      return value != null ? myIds.get(value) : NULL_STRING;
+    }
+
+    @NotNull
+    private byte[] getBytes(int id) {
+      return myBytes.get(id);
+    }
+
+    private int size() {
+      return myBytes.size();
+    }
+  }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jetbrains.pyscicomp.codeInsight.types;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.roots.ProjectRootManager;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.psi.PsiDirectory;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.util.CachedValue;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import com.jetbrains.pyscicomp.util.PyPackageUtils;
+import com.jetbrains.python.psi.PyFunction;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Read-only type information of numpy and scipy functions precomputed from their docstrings at build time
+ * by tools/build-bundled-types-db.py and shipped with the plugin. Types are written in Numpy docstring format,
+ * the return type is "None" for functions returning nothing and "tuple" for functions returning several values.
+ * <p/>
+ * Functions found here need no parsing of their docstrings to obtain types and permissible values. The database
+ * describes the pinned versions of libraries it was built against, so it is used only for these versions.
+ */
+public class BundledTypeDatabase {
+
+  private static final Logger LOG = Logger.getInstance(BundledTypeDatabase.class.getName());
+
+  private static final String RESOURCE_PATH = "/types/bundled_types.bin";
+  private static final Key<CachedValue<Boolean>> PINNED_VERSION_KEY = Key.create("BundledTypeDatabase.PINNED_VERSION");
+
+  // Versions of libraries the database is built against, see PINNED_VERSIONS of the build script
+  private static final Map<String, String> PINNED_VERSIONS = new HashMap<String, String>();
+
+  static {
+    PINNED_VERSIONS.put("numpy", "1.6.2");
+    PINNED_VERSIONS.put("scipy", "0.11.0");
+  }
+
+  // Marks functions absent in the database
+  private static final FunctionTypeInformation NOT_FOUND =
+    new FunctionTypeInformation("", null, Collections.<ParameterTypeInformation>emptyList());
+
+  private static final BundledTypeDatabase INSTANCE = new BundledTypeDatabase(load());
+
+  @Nullable
+  private final BinaryTypeDatabase myDatabase;
+  // Decoded entries of the database, including misses
+  private final ConcurrentMap<String, FunctionTypeInformation> myFunctions = new ConcurrentHashMap<String, FunctionTypeInformation>();
+
+  private BundledTypeDatabase(@Nullable BinaryTypeDatabase database) {
+    myDatabase = database;
+  }
+
+  public static BundledTypeDatabase getInstance() {
+    return INSTANCE;
+  }
+
+  @Nullable
+  public FunctionTypeInformation getFunction(@Nullable String name) {
+    if (name == null || myDatabase == null) {
+      return null;
+    }
+    FunctionTypeInformation function = myFunctions.get(name);
+    if (function == null) {
+      function = myDatabase.getFunction(name);
+      if (function == null) {
+        function = NOT_FOUND;
+      }
+      myFunctions.put(name, function);
+    }
+    return function != NOT_FOUND ? function : null;
+  }
+
+  /**
+   * Returns type information of specified function or null if it is absent in the database or the function
+   * belongs to a version of library other than the pinned one.
+   */
+  @Nullable
+  public FunctionTypeInformation getFunction(@NotNull PyFunction function) {
+    if (myDatabase == null || !isPinnedVersion(function)) {
+      return null;
+    }
+    return getFunction(function.getQualifiedName());
+  }
+
+  /**
+   * Checks whether specified function belongs to a pinned version of library. The result is cached for the
+   * directory containing the function until project roots change, so packages are not walked on every query.
+   */
+  private static boolean isPinnedVersion(@NotNull PyFunction function) {
+    final PsiFile file = function.getContainingFile();
+    PsiDirectory directory = file != null ? file.getContainingDirectory() : null;
+    if (directory == null) {
+      return false;
+    }
+    CachedValuesManager manager = CachedValuesManager.getManager(directory.getProject());
+    return manager.getCachedValue(directory, PINNED_VERSION_KEY, new CachedValueProvider<Boolean>() {
+      @Override
+      public Result<Boolean> compute() {
+        return Result.create(isPinnedVersion(PyPackageUtils.getTopLevelPackage(file)),
+                             ProjectRootManager.getInstance(file.getProject()));
+      }
+    }, false);
+  }
+
+  private static boolean isPinnedVersion(@Nullable PsiDirectory packageDirectory) {
+    if (packageDirectory == null) {
+      return false;
+    }
+    String pinnedVersion = PINNED_VERSIONS.get(packageDirectory.getName());
+    return pinnedVersion != null && pinnedVersion.equals(PyPackageUtils.getVersion(packageDirectory));
+  }
+
+  @Nullable
+  private static BinaryTypeDatabase load() {
+    InputStream stream = BundledTypeDatabase.class.getResourceAsStream(RESOURCE_PATH);
+    if (stream == null) {
+      LOG.info("Bundled type database is not found");
+      return null;
+    }
+    try {
+      try {
+        return BinaryTypeDatabase.wrap(ByteBuffer.wrap(FileUtil.loadBytes(stream)));
+      }
+      finally {
+        stream.close();
+      }
+    }
+    catch (IOException e) {
+      LOG.warn("Cannot load bundled type database", e);
+      return null;
+    }
+  }
+}
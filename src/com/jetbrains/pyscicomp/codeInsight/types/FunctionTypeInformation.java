@@ -18,6 +18,8 @@ package com.jetbrains.pyscicomp.codeInsight.types;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.psi.PsiElement;
 import com.intellij.util.Function;
+import com.jetbrains.pyscicomp.util.Interner;
+import com.jetbrains.pyscicomp.util.ParameterIndex;
 import com.jetbrains.pyscicomp.util.PyFunctionUtils;
 import com.jetbrains.python.psi.PyFunction;
 import com.jetbrains.python.psi.PyParameter;
@@ -25,6 +27,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -32,17 +35,63 @@ public class FunctionTypeInformation {
 
   private String name;
   private String returnType;
-  private List<ParameterTypeInformation> parameters = new ArrayList<ParameterTypeInformation>();
+  private List<ParameterTypeInformation> parameters;
+  // Built on first lookup, since instances are also created by Gson bypassing the constructor
+  private transient volatile ParameterIndex<ParameterTypeInformation> parameterIndex;
+  // Version of library which shard of the type database the information belongs to, see TypeInformationCache.
+  // Written to JSON exports, so that import puts the information back into the same shard
+  private String version;
 
   public FunctionTypeInformation(String name, String returnType, List<ParameterTypeInformation> parameters) {
+    this(name, returnType, parameters, null);
+  }
+
+  public FunctionTypeInformation(String name, String returnType, List<ParameterTypeInformation> parameters,
+                                 @Nullable String version) {
     this.name = name;
-    this.returnType = returnType;
-    this.parameters = parameters;
+    this.version = version;
+    this.returnType = Interner.intern(returnType);
+    if (parameters.isEmpty()) {
+      this.parameters = Collections.emptyList();
+    } else {
+      ParameterTypeInformation[] array = parameters.toArray(new ParameterTypeInformation[parameters.size()]);
+      this.parameters = Collections.unmodifiableList(Arrays.asList(array));
+    }
   }
 
+  /**
+   * Returns a copy of type information created by Gson. Gson bypasses constructors, so its objects hold
+   * mutable collections and separate copies of strings repeated in many functions. The version is kept.
+   */
+  @NotNull
+  static FunctionTypeInformation copyOf(@NotNull FunctionTypeInformation function) {
+    List<ParameterTypeInformation> parameters = new ArrayList<ParameterTypeInformation>();
+    if (function.parameters != null) {
+      for (ParameterTypeInformation parameter : function.parameters) {
+        parameters.add(new ParameterTypeInformation(parameter.getName(), parameter.getType(), parameter.getPermissibleValues()));
+      }
+    }
+    return new FunctionTypeInformation(function.name, function.returnType, parameters, function.version);
+  }
+
+  /**
+   * Returns a copy of type information which belongs to the shard for specified version of library.
+   */
+  @NotNull
+  FunctionTypeInformation withVersion(@Nullable String version) {
+    FunctionTypeInformation result = new FunctionTypeInformation(name, returnType, getParameters(), version);
+    // Build the index here, so that copies made for each request don't rebuild it
+    result.parameterIndex = getParameterIndex();
+    return result;
+  }
+
+  /**
+   * Returns type information of specified function for editing. Type information found in the database keeps
+   * the version of its shard, so that the edited information is put back into the same shard.
+   */
   public static FunctionTypeInformation forPyFunction(@NotNull PyFunction function, @Nullable PsiElement reference) {
     String functionName = function.getQualifiedName();
-    FunctionTypeInformation typeInformation = TypeInformationCache.getInstance().getFunction(functionName);
+    FunctionTypeInformation typeInformation = TypeInformationCache.getInstance().getVersionedFunction(function);
     if (typeInformation == null) {
       int start = 0;
       if (function.getContainingClass() != null) {
@@ -68,14 +117,36 @@ public class FunctionTypeInformation {
     return name;
   }
 
+  /**
+   * Returns version of library which shard of the type database the information belongs to or null for
+   * unversioned shards.
+   */
+  @Nullable
+  public String getVersion() {
+    return version;
+  }
+
+  /**
+   * Returns parameter with specified name, see {@link ParameterIndex} for matching of names with "p_" prefix.
+   */
   @Nullable
   public ParameterTypeInformation getParameter(@NotNull String name) {
-    for (ParameterTypeInformation parameter : parameters) {
-      if (name.equals(parameter.getName())) {
-        return parameter;
-      }
+    return getParameterIndex().get(name);
+  }
+
+  @NotNull
+  ParameterIndex<ParameterTypeInformation> getParameterIndex() {
+    ParameterIndex<ParameterTypeInformation> index = parameterIndex;
+    if (index == null) {
+      index = new ParameterIndex<ParameterTypeInformation>(getParameters(), new Function<ParameterTypeInformation, String>() {
+        @Override
+        public String fun(ParameterTypeInformation parameter) {
+          return parameter.getName();
+        }
+      });
+      parameterIndex = index;
     }
-    return null;
+    return index;
   }
 
   @Nullable
@@ -89,7 +160,8 @@ public class FunctionTypeInformation {
 
   @NotNull
   public List<ParameterTypeInformation> getParameters() {
-    return Collections.unmodifiableList(parameters);
+    // Parameters are stored in immutable lists unless the object is created by Gson, see copyOf()
+    return parameters;
   }
 
   @Override
@@ -115,6 +187,11 @@ public class FunctionTypeInformation {
                       },
                       ", "));
     result.append(")");
+    if (version != null) {
+      result.append(" [");
+      result.append(version);
+      result.append("]");
+    }
     return result.toString();
   }
 }
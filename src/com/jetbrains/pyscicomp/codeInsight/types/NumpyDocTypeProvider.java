@@ -16,6 +16,7 @@
 package com.jetbrains.pyscicomp.codeInsight.types;
 
 import com.intellij.psi.PsiElement;
+import com.intellij.util.containers.ConcurrentSoftValueHashMap;
 import com.jetbrains.pyscicomp.documentation.DocStringParameter;
 import com.jetbrains.pyscicomp.documentation.NumpyDocString;
 import com.jetbrains.python.psi.PyFunction;
@@ -26,10 +27,13 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Pattern;
 
 /**
- * Provides type information extracted from Numpy docstring format.
+ * Provides type information extracted from Numpy docstring format. Types of functions found in
+ * {@link BundledTypeDatabase} are taken from there, docstrings are parsed for other functions and types missing in the
+ * database. Type strings are tokenized once (see {@link NumpyDocType}) and resulting types are cached per anchor file.
  */
 public class NumpyDocTypeProvider extends PyTypeProviderBase {
 
@@ -60,29 +64,68 @@ public class NumpyDocTypeProvider extends PyTypeProviderBase {
     NUMPY_ALIAS_TO_REAL_TYPE.put("number", "int or long or float");
   }
 
-  @Nullable
-  private static PyType parseSingleNumpyDocType(@NotNull PsiElement anchor, @NotNull String typeString) {
-    String realTypeName = NUMPY_ALIAS_TO_REAL_TYPE.get(typeString);
-    if (realTypeName != null) {
-      PyType type = PyTypeParser.getTypeByName(anchor, realTypeName);
-      if (type != null) {
-        return type;
+  private static final ParsedTypeCache NUMPY_DOC_TYPES = new ParsedTypeCache("NumpyDocTypeProvider.NUMPY_DOC_TYPES") {
+    @Nullable
+    @Override
+    protected PyType parse(@NotNull PsiElement anchor, @NotNull String typeString) {
+      return NumpyDocType.forString(typeString).toPyType(anchor);
+    }
+  };
+
+  /**
+   * Type string from Numpy docstring split into union members, with aliases of members looked up.
+   * Instances are interned and softly held, so each distinct type string is usually tokenized only once,
+   * while the pool gives way under memory pressure.
+   */
+  private static class NumpyDocType {
+
+    private static final ConcurrentMap<String, NumpyDocType> INTERNED = new ConcurrentSoftValueHashMap<String, NumpyDocType>();
+
+    private final String[] myMembers;
+    // Real type names for members which are aliases, null for other members
+    private final String[] myRealTypes;
+
+    private NumpyDocType(@NotNull String typeString) {
+      List<String> members = NumpyDocString.getNumpyUnionType(NumpyDocString.cleanupOptional(typeString));
+      myMembers = members.toArray(new String[members.size()]);
+      myRealTypes = new String[myMembers.length];
+      for (int i = 0; i < myMembers.length; i++) {
+        myRealTypes[i] = NUMPY_ALIAS_TO_REAL_TYPE.get(myMembers[i]);
       }
     }
-    return PyTypeParser.getTypeByName(anchor, typeString);
+
+    @NotNull
+    private static NumpyDocType forString(@NotNull String typeString) {
+      NumpyDocType type = INTERNED.get(typeString);
+      if (type == null) {
+        type = new NumpyDocType(typeString);
+        INTERNED.put(typeString, type);
+      }
+      return type;
+    }
+
+    @Nullable
+    private PyType toPyType(@NotNull PsiElement anchor) {
+      Set<PyType> types = new LinkedHashSet<PyType>();
+      for (int i = 0; i < myMembers.length; i++) {
+        PyType parsedType = null;
+        if (myRealTypes[i] != null) {
+          parsedType = ParsedTypeCache.getTypeByName(anchor, myRealTypes[i]);
+        }
+        if (parsedType == null) {
+          parsedType = ParsedTypeCache.getTypeByName(anchor, myMembers[i]);
+        }
+        if (parsedType != null) {
+          types.add(parsedType);
+        }
+      }
+      return PyUnionType.union(types);
+    }
   }
 
   @Nullable
   private static PyType parseNumpyDocType(@NotNull PsiElement anchor, @NotNull String typeString) {
-    typeString = NumpyDocString.cleanupOptional(typeString);
-    Set<PyType> types = new LinkedHashSet<PyType>();
-    for (String typeName : NumpyDocString.getNumpyUnionType(typeString)) {
-      PyType parsedType = parseSingleNumpyDocType(anchor, typeName);
-      if (parsedType != null) {
-        types.add(parsedType);
-      }
-    }
-    return PyUnionType.union(types);
+    return NUMPY_DOC_TYPES.getType(anchor, typeString);
   }
 
   @Nullable
@@ -90,22 +133,23 @@ public class NumpyDocTypeProvider extends PyTypeProviderBase {
   public PyType getParameterType(PyNamedParameter parameter, PyFunction function, TypeEvalContext context) {
     String parameterName = parameter.getName();
     if (parameterName != null) {
-      return getParameterType(function, parameterName);
+      return getParameterType(function, parameterName, context);
     }
     return null;
   }
 
   @Nullable
-  public static PyType getParameterType(PyFunction function, String parameterName) {
-    NumpyDocString docString = NumpyDocString.forFunction(function, function);
+  public static PyType getParameterType(PyFunction function, String parameterName, TypeEvalContext context) {
+    FunctionTypeInformation bundledFunction = BundledTypeDatabase.getInstance().getFunction(function);
+    String bundledType = bundledFunction != null ? bundledFunction.getParameterType(parameterName) : null;
+    if (bundledType != null) {
+      return parseNumpyDocType(function, bundledType);
+    }
+    NumpyDocString docString = NumpyDocString.forFunction(function, function, context);
     if (docString != null) {
+      // If parameter name starts with "p_", and there is no such parameter in docstring,
+      // parameter named without such prefix is returned.
       DocStringParameter parameter = docString.getNamedParameter(parameterName);
-
-      // If parameter name starts with "p_", and we failed to obtain it from docstring,
-      // try to obtain parameter named without such prefix.
-      if (parameter == null && parameterName.startsWith("p_")) {
-        parameter = docString.getNamedParameter(parameterName.substring(2));
-      }
       if (parameter != null) {
         return parseNumpyDocType(function, parameter.getType());
       }
@@ -117,13 +161,18 @@ public class NumpyDocTypeProvider extends PyTypeProviderBase {
   @Override
   public PyType getReturnType(PyFunction function, @Nullable PyQualifiedExpression callSite, TypeEvalContext context) {
     if (callSite != null) {
-      NumpyDocString docString = NumpyDocString.forFunction(function, callSite);
+      FunctionTypeInformation bundledFunction = BundledTypeDatabase.getInstance().getFunction(function);
+      String bundledType = bundledFunction != null ? bundledFunction.getReturnType() : null;
+      if (bundledType != null) {
+        return parseNumpyDocType(callSite, bundledType);
+      }
+      NumpyDocString docString = NumpyDocString.forFunction(function, callSite, context);
       if (docString != null) {
         List<DocStringParameter> returns = docString.getReturns();
         switch (returns.size()) {
           case 0:
             // Function returns nothing
-            return PyTypeParser.getTypeByName(callSite, "None");
+            return ParsedTypeCache.getTypeByName(callSite, "None");
           case 1:
             // Function returns single value
             String typeString = returns.get(0).getType();
@@ -133,7 +182,7 @@ public class NumpyDocTypeProvider extends PyTypeProviderBase {
             return null;
           default:
             // Function returns a tuple
-            return PyTypeParser.getTypeByName(callSite, "tuple");
+            return ParsedTypeCache.getTypeByName(callSite, "tuple");
         }
       }
     }
@@ -15,21 +15,24 @@
  */
 package com.jetbrains.pyscicomp.codeInsight.types;
 
-import java.util.Collection;
-import java.util.Collections;
-import java.util.LinkedHashSet;
-import java.util.Set;
+import com.jetbrains.pyscicomp.documentation.PermissibleValues;
+import com.jetbrains.pyscicomp.util.Interner;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
 
 public class ParameterTypeInformation {
 
   private String name;
   private String type;
   private final Set<String> permissibleValues;
+  // Built on demand for checking of arguments, isn't serialized
+  private transient volatile PermissibleValues indexedPermissibleValues;
 
   public ParameterTypeInformation(String name, String type, Collection<String> permissibleValues) {
-    this.name = name;
-    this.type = type;
-    this.permissibleValues = new LinkedHashSet<String>(permissibleValues);
+    this.name = Interner.intern(name);
+    this.type = Interner.intern(type);
+    this.permissibleValues = ValueSet.create(permissibleValues);
   }
 
   public String getType() {
@@ -41,6 +44,71 @@ public class ParameterTypeInformation {
   }
 
   public Set<String> getPermissibleValues() {
-    return Collections.unmodifiableSet(permissibleValues);
+    // Values are stored in immutable sets unless the object is created by Gson, see FunctionTypeInformation.copyOf()
+    return permissibleValues != null ? permissibleValues : Collections.<String>emptySet();
+  }
+
+  /**
+   * Returns permissible values indexed for matching of arguments ignoring case.
+   */
+  @NotNull
+  public PermissibleValues getIndexedPermissibleValues() {
+    PermissibleValues result = indexedPermissibleValues;
+    if (result == null) {
+      result = PermissibleValues.create(getPermissibleValues());
+      indexedPermissibleValues = result;
+    }
+    return result;
+  }
+
+  /**
+   * Immutable set of interned values backed by an array. Sets of permissible values are small, so linear
+   * search is fine here.
+   */
+  private static class ValueSet extends AbstractSet<String> {
+
+    private final String[] myValues;
+
+    private ValueSet(@NotNull String[] values) {
+      myValues = values;
+    }
+
+    @NotNull
+    private static Set<String> create(@NotNull Collection<String> values) {
+      if (values.isEmpty()) {
+        return Collections.emptySet();
+      }
+      if (values instanceof ValueSet) {
+        return (ValueSet) values;
+      }
+      Set<String> distinctValues = new LinkedHashSet<String>(values);
+      String[] array = new String[distinctValues.size()];
+      int i = 0;
+      for (String value : distinctValues) {
+        array[i++] = Interner.intern(value);
+      }
+      return new ValueSet(array);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+      for (String value : myValues) {
+        if (value.equals(o)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+      // Iterator of Arrays.asList() doesn't support removal
+      return Arrays.asList(myValues).iterator();
+    }
+
+    @Override
+    public int size() {
+      return myValues.length;
+    }
   }
 }
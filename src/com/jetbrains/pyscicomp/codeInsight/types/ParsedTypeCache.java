@@ -0,0 +1,95 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jetbrains.pyscicomp.codeInsight.types;
+
+import com.intellij.openapi.roots.ProjectRootManager;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.Ref;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.util.CachedValue;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import com.intellij.psi.util.PsiModificationTracker;
+import com.jetbrains.python.psi.types.PyType;
+import com.jetbrains.python.psi.types.PyTypeParser;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Caches types parsed from type strings. Names in a type string are resolved in the scope of the anchor
+ * element, so types are cached per file of the anchor and dropped on any PSI or root modification.
+ */
+public abstract class ParsedTypeCache {
+
+  private static final ParsedTypeCache TYPE_NAMES = new ParsedTypeCache("ParsedTypeCache.TYPE_NAMES") {
+    @Nullable
+    @Override
+    protected PyType parse(@NotNull PsiElement anchor, @NotNull String typeString) {
+      return PyTypeParser.getTypeByName(anchor, typeString);
+    }
+  };
+
+  private final Key<CachedValue<ConcurrentMap<String, Ref<PyType>>>> myKey;
+
+  protected ParsedTypeCache(@NotNull String name) {
+    myKey = Key.create(name);
+  }
+
+  @Nullable
+  protected abstract PyType parse(@NotNull PsiElement anchor, @NotNull String typeString);
+
+  /**
+   * Cached version of {@link PyTypeParser#getTypeByName(PsiElement, String)}.
+   */
+  @Nullable
+  public static PyType getTypeByName(@NotNull PsiElement anchor, @NotNull String typeString) {
+    return TYPE_NAMES.getType(anchor, typeString);
+  }
+
+  @Nullable
+  public PyType getType(@NotNull PsiElement anchor, @NotNull String typeString) {
+    ConcurrentMap<String, Ref<PyType>> types = getParsedTypes(anchor);
+    if (types == null) {
+      return parse(anchor, typeString);
+    }
+    Ref<PyType> type = types.get(typeString);
+    if (type == null) {
+      type = Ref.create(parse(anchor, typeString));
+      types.put(typeString, type);
+    }
+    return type.get();
+  }
+
+  @Nullable
+  private ConcurrentMap<String, Ref<PyType>> getParsedTypes(@NotNull PsiElement anchor) {
+    final PsiFile file = anchor.getContainingFile();
+    if (file == null) {
+      return null;
+    }
+    CachedValuesManager manager = CachedValuesManager.getManager(file.getProject());
+    return manager.getCachedValue(file, myKey, new CachedValueProvider<ConcurrentMap<String, Ref<PyType>>>() {
+      @Override
+      public Result<ConcurrentMap<String, Ref<PyType>>> compute() {
+        ConcurrentMap<String, Ref<PyType>> types = new ConcurrentHashMap<String, Ref<PyType>>();
+        return Result.create(types, PsiModificationTracker.MODIFICATION_COUNT, ProjectRootManager.getInstance(file.getProject()));
+      }
+    }, false);
+  }
+}
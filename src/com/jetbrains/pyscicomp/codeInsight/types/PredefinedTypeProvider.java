@@ -20,13 +20,12 @@ import com.jetbrains.python.psi.PyFunction;
 import com.jetbrains.python.psi.PyNamedParameter;
 import com.jetbrains.python.psi.PyQualifiedExpression;
 import com.jetbrains.python.psi.types.PyType;
-import com.jetbrains.python.psi.types.PyTypeParser;
 import com.jetbrains.python.psi.types.PyTypeProviderBase;
 import com.jetbrains.python.psi.types.TypeEvalContext;
 import org.jetbrains.annotations.Nullable;
 
 /**
- * Provides type information stored in user-editable database.
+ * Provides type information stored in user-editable database. Parsed types are cached, see {@link ParsedTypeCache}.
  */
 public class PredefinedTypeProvider extends PyTypeProviderBase {
 
@@ -34,12 +33,11 @@ public class PredefinedTypeProvider extends PyTypeProviderBase {
   @Override
   public PyType getReturnType(PyFunction function, @Nullable PyQualifiedExpression callSite, TypeEvalContext context) {
     if (function.isValid()) {
-      String qualifiedName = function.getQualifiedName();
-      FunctionTypeInformation typeInformation = TypeInformationCache.getInstance().getFunction(qualifiedName);
+      FunctionTypeInformation typeInformation = TypeInformationCache.getInstance().getFunction(function);
       if (typeInformation != null) {
         String returnType = typeInformation.getReturnType();
         if (returnType != null) {
-          return PyTypeParser.getTypeByName(function, returnType);
+          return ParsedTypeCache.getTypeByName(function, returnType);
         }
       }
     }
@@ -50,13 +48,12 @@ public class PredefinedTypeProvider extends PyTypeProviderBase {
   @Override
   public PyType getParameterType(PyNamedParameter parameter, PyFunction function, TypeEvalContext context) {
     if (function.isValid()) {
-      String qualifiedName = function.getQualifiedName();
-      FunctionTypeInformation typeInformation = TypeInformationCache.getInstance().getFunction(qualifiedName);
+      FunctionTypeInformation typeInformation = TypeInformationCache.getInstance().getFunction(function);
       String parameterName = parameter.getName();
       if (typeInformation != null && parameterName != null) {
         String type = typeInformation.getParameterType(parameterName);
         if (type != null) {
-          return PyTypeParser.getTypeByName(function, type);
+          return ParsedTypeCache.getTypeByName(function, type);
         }
       }
     }
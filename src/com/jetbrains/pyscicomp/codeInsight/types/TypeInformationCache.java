@@ -18,19 +18,57 @@ package com.jetbrains.pyscicomp.codeInsight.types;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.reflect.TypeToken;
+import com.intellij.codeInsight.daemon.DaemonCodeAnalyzer;
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.project.ProjectManager;
+import com.intellij.openapi.util.ModificationTracker;
+import com.intellij.psi.PsiDirectory;
+import com.intellij.psi.PsiFile;
+import com.intellij.util.Alarm;
+import com.jetbrains.pyscicomp.util.PyPackageUtils;
+import com.jetbrains.python.psi.PyFunction;
+import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.*;
 import java.lang.reflect.Type;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 
-public class TypeInformationCache {
+/**
+ * User-editable database of function types. The database is split into shards (see {@link TypeInformationShard}),
+ * one per top-level package of functions, e.g. "numpy", and optionally per version of the library, e.g.
+ * "numpy-1.6.2". A shard is loaded on a pooled thread when a function of its package is queried for the first
+ * time, so memory and loading time depend only on libraries actually used. Until then the shard answers no type
+ * information.
+ * <p/>
+ * Functions queried by {@link #getFunction(PyFunction)} are looked up in the shard for the installed version of
+ * their library first. Modifications go to the shard of version kept by the type information, see
+ * {@link FunctionTypeInformation#getVersion()}, so edits of information found in a versioned shard are put back
+ * into it; new information goes to unversioned shards unless a version is specified explicitly.
+ * JSON format is supported for import and export.
+ * <p/>
+ * Queries may come from any thread and take no locks, modifications are serialized.
+ */
+public class TypeInformationCache implements ModificationTracker {
+
+  private static final Logger LOG = Logger.getInstance(TypeInformationCache.class.getName());
 
-  private static final String CACHE_PATH = PathManager.getOptionsPath() + File.separator + "types_db.json";
+  private static final String SHARDS_PATH = PathManager.getOptionsPath() + File.separator + "types_db";
+  private static final char VERSION_SEPARATOR = '-';
+  private static final String LEGACY_CACHE_PATH = PathManager.getOptionsPath() + File.separator + "types_db.bin";
+  private static final String LEGACY_JOURNAL_PATH = PathManager.getOptionsPath() + File.separator + "types_db.journal";
+  private static final String LEGACY_JSON_PATH = PathManager.getOptionsPath() + File.separator + "types_db.json";
+  private static final int SAVE_DELAY = 1000;
   private static final Type DATA_TYPE = new TypeToken<List<FunctionTypeInformation>>() {
   }.getType();
 
@@ -40,38 +78,436 @@ public class TypeInformationCache {
     return CACHE;
   }
 
-  private final Map<String, FunctionTypeInformation> myNamesToFunctions;
+  private final Runnable myOnShardLoaded = new Runnable() {
+    @Override
+    public void run() {
+      myModificationCount.incrementAndGet();
+      restartHighlighting();
+    }
+  };
+
+  private final ConcurrentMap<String, TypeInformationShard> myShards = new ConcurrentHashMap<String, TypeInformationShard>();
+  // Packages which have shards for particular versions
+  private final Set<String> myVersionedPackages = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+  private volatile boolean myShardsFound = false;
+  // Changes whenever results of queries may change, i.e. on modifications and loading of shards
+  private final AtomicLong myModificationCount = new AtomicLong();
+
+  @Nullable
+  private Future<?> myMigration = null;
+  private final Alarm mySaveAlarm = new Alarm(Alarm.ThreadToUse.POOLED_THREAD, ApplicationManager.getApplication());
 
   private TypeInformationCache() {
-    List<FunctionTypeInformation> functions = load();
-    myNamesToFunctions = new HashMap<String, FunctionTypeInformation>();
+  }
+
+  /**
+   * Starts conversion of the database saved by previous versions into shards on a pooled thread unless it has
+   * been already started. Shards themselves are loaded on demand.
+   */
+  public synchronized void startLoading() {
+    if (myMigration == null) {
+      myMigration = ApplicationManager.getApplication().executeOnPooledThread(new Runnable() {
+        @Override
+        public void run() {
+          migrateLegacyDatabase();
+        }
+      });
+    }
+  }
+
+  /**
+   * Waits until the database of previous versions is converted.
+   *
+   * @param timeout Maximum time to wait in milliseconds, negative to wait without limit.
+   * @return true if the conversion is finished.
+   */
+  private boolean waitForMigration(long timeout) {
+    startLoading();
+    Future<?> migration;
+    synchronized (this) {
+      migration = myMigration;
+    }
+    try {
+      if (timeout < 0) {
+        migration.get();
+      } else {
+        migration.get(timeout, TimeUnit.MILLISECONDS);
+      }
+    }
+    catch (InterruptedException e) {
+      LOG.info("Interrupted while converting type database", e);
+    }
+    catch (ExecutionException e) {
+      LOG.info("Cannot convert type database", e);
+    }
+    catch (TimeoutException e) {
+      return false;
+    }
+    return migration.isDone();
+  }
+
+  /**
+   * Returns true if the database of previous versions has been converted and all shards queried so far have
+   * been loaded, i.e. queries for libraries in use return actual type information.
+   */
+  public boolean isLoaded() {
+    synchronized (this) {
+      if (myMigration == null || !myMigration.isDone()) {
+        return false;
+      }
+    }
+    for (TypeInformationShard shard : myShards.values()) {
+      if (shard.isLoading()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void migrateLegacyDatabase() {
+    File legacyFile = new File(LEGACY_CACHE_PATH);
+    File legacyJournalFile = new File(LEGACY_JOURNAL_PATH);
+    File legacyJsonFile = new File(LEGACY_JSON_PATH);
+    List<FunctionTypeInformation> functions = null;
+    if (legacyFile.exists()) {
+      Map<String, FunctionTypeInformation> namesToFunctions = new HashMap<String, FunctionTypeInformation>();
+      BinaryTypeDatabase database = TypeInformationShard.map(legacyFile);
+      if (database != null) {
+        for (FunctionTypeInformation function : database.getAll()) {
+          namesToFunctions.put(function.getName(), function);
+        }
+      }
+      Map<String, FunctionTypeInformation> journaled = new HashMap<String, FunctionTypeInformation>();
+      new TypeInformationJournal(legacyJournalFile).replay(journaled);
+      for (Map.Entry<String, FunctionTypeInformation> entry : journaled.entrySet()) {
+        if (entry.getValue() != null) {
+          namesToFunctions.put(entry.getKey(), entry.getValue());
+        } else {
+          namesToFunctions.remove(entry.getKey());
+        }
+      }
+      functions = new ArrayList<FunctionTypeInformation>(namesToFunctions.values());
+    } else if (legacyJsonFile.exists()) {
+      functions = loadJson(legacyJsonFile);
+    }
+
     if (functions != null) {
       for (FunctionTypeInformation function : functions) {
-        myNamesToFunctions.put(function.getName(), function);
+        putFunction(function, false);
+      }
+      if (saveShards()) {
+        for (File file : new File[]{legacyFile, legacyJournalFile, legacyJsonFile}) {
+          if (file.exists() && !file.delete()) {
+            LOG.info("Cannot delete " + file);
+          }
+        }
+      }
+      myOnShardLoaded.run();
+    }
+  }
+
+  private static void restartHighlighting() {
+    ApplicationManager.getApplication().invokeLater(new Runnable() {
+      @Override
+      public void run() {
+        for (Project project : ProjectManager.getInstance().getOpenProjects()) {
+          if (!project.isDisposed()) {
+            DaemonCodeAnalyzer.getInstance(project).restart();
+          }
+        }
+      }
+    });
+  }
+
+  /**
+   * Finds shards stored on disk. Files are listed only once, shards created afterwards are registered
+   * on creation.
+   */
+  private void findShards() {
+    if (myShardsFound) {
+      return;
+    }
+    synchronized (this) {
+      if (!myShardsFound) {
+        File[] files = new File(SHARDS_PATH).listFiles();
+        if (files != null) {
+          for (File file : files) {
+            String shardName = TypeInformationShard.getShardName(file.getName());
+            if (shardName != null) {
+              getOrCreateShard(shardName);
+            }
+          }
+        }
+        myShardsFound = true;
       }
     }
   }
 
+  @Nullable
+  private TypeInformationShard getShard(@NotNull String shardName) {
+    return myShards.get(shardName);
+  }
+
+  @NotNull
+  private TypeInformationShard getOrCreateShard(@NotNull String shardName) {
+    TypeInformationShard shard = myShards.get(shardName);
+    if (shard == null) {
+      TypeInformationShard newShard = new TypeInformationShard(new File(SHARDS_PATH), shardName);
+      shard = myShards.putIfAbsent(shardName, newShard);
+      if (shard == null) {
+        shard = newShard;
+        int separator = shardName.indexOf(VERSION_SEPARATOR);
+        if (separator != -1) {
+          myVersionedPackages.add(shardName.substring(0, separator));
+        }
+      }
+    }
+    return shard;
+  }
+
+  /**
+   * Returns name of shard for specified package and version normalized by {@link PyPackageUtils#normalizeVersion(String)}.
+   */
+  @NotNull
+  private static String getShardName(@NotNull String packageName, @Nullable String version) {
+    return version != null ? packageName + VERSION_SEPARATOR + version : packageName;
+  }
+
+  @Nullable
+  private static String getShardVersion(@NotNull String shardName) {
+    int separator = shardName.indexOf(VERSION_SEPARATOR);
+    return separator != -1 ? shardName.substring(separator + 1) : null;
+  }
+
+  @NotNull
+  private static String getPackageName(@NotNull String functionName) {
+    int separator = functionName.indexOf('.');
+    return separator != -1 ? functionName.substring(0, separator) : functionName;
+  }
+
+  /**
+   * Returns type information for specified function or null if it is unknown or its shard is not loaded yet.
+   * Only unversioned shards are queried.
+   */
   @Nullable
   public FunctionTypeInformation getFunction(@Nullable String name) {
-    return myNamesToFunctions.get(name);
+    if (name == null) {
+      return null;
+    }
+    findShards();
+    return getFunction(getShard(getPackageName(name)), name);
   }
 
+  /**
+   * Returns type information for specified function or null if it is unknown or its shard is not loaded yet.
+   * The shard for the installed version of the library is queried first.
+   */
+  @Nullable
+  public FunctionTypeInformation getFunction(@NotNull PyFunction function) {
+    return getFunction(function, false);
+  }
+
+  /**
+   * Same as {@link #getFunction(PyFunction)}, but type information found in a versioned shard keeps its version,
+   * so that {@link #putFunction(FunctionTypeInformation, boolean)} puts modifications of it back into the shard.
+   */
+  @Nullable
+  public FunctionTypeInformation getVersionedFunction(@NotNull PyFunction function) {
+    return getFunction(function, true);
+  }
+
+  @Nullable
+  private FunctionTypeInformation getFunction(@NotNull PyFunction function, boolean keepVersion) {
+    String name = function.getQualifiedName();
+    if (name == null) {
+      return null;
+    }
+    findShards();
+    String packageName = getPackageName(name);
+    if (myVersionedPackages.contains(packageName)) {
+      String version = getLibraryVersion(function, packageName);
+      if (version != null) {
+        FunctionTypeInformation result = getFunction(getShard(getShardName(packageName, version)), name);
+        if (result != null) {
+          return keepVersion ? result.withVersion(version) : result;
+        }
+      }
+    }
+    return getFunction(getShard(packageName), name);
+  }
+
+  @Nullable
+  private FunctionTypeInformation getFunction(@Nullable TypeInformationShard shard, @NotNull String name) {
+    if (shard == null) {
+      return null;
+    }
+    if (!shard.isLoaded()) {
+      shard.startLoading(myOnShardLoaded);
+      return null;
+    }
+    return shard.getFunction(name);
+  }
+
+  @Nullable
+  private static String getLibraryVersion(@NotNull PyFunction function, @NotNull String packageName) {
+    PsiFile file = function.getContainingFile();
+    PsiDirectory packageDirectory = file != null ? PyPackageUtils.getTopLevelPackage(file) : null;
+    if (packageDirectory != null && packageName.equals(packageDirectory.getName())) {
+      return PyPackageUtils.getVersion(packageDirectory);
+    }
+    return null;
+  }
+
+  /**
+   * Adds type information for specified function to the shard for version of its library kept by the information.
+   */
   public void putFunction(FunctionTypeInformation function, boolean autoSave) {
-    myNamesToFunctions.put(function.getName(), function);
+    putFunction(function, function.getVersion(), autoSave);
+  }
+
+  /**
+   * Adds type information for specified function to the shard for specified version of its library.
+   */
+  public void putFunction(FunctionTypeInformation function, @Nullable String version, boolean autoSave) {
+    findShards();
+    String normalizedVersion = version != null ? PyPackageUtils.normalizeVersion(version) : null;
+    String shardName = getShardName(getPackageName(function.getName()), normalizedVersion);
+    getOrCreateShard(shardName).putFunction(function);
+    myModificationCount.incrementAndGet();
+    if (autoSave) {
+      save();
+    }
+  }
+
+  /**
+   * Removes type information for specified function from the shard for version of its library kept by the information.
+   */
+  public void removeFunction(@NotNull FunctionTypeInformation function, boolean autoSave) {
+    removeFunction(function.getName(), function.getVersion(), autoSave);
+  }
+
+  /**
+   * Removes type information for specified function from the shard for specified version of its library.
+   */
+  public void removeFunction(@NotNull String name, @Nullable String version, boolean autoSave) {
+    findShards();
+    String normalizedVersion = version != null ? PyPackageUtils.normalizeVersion(version) : null;
+    getOrCreateShard(getShardName(getPackageName(name), normalizedVersion)).removeFunction(name);
+    myModificationCount.incrementAndGet();
     if (autoSave) {
       save();
     }
   }
 
+  @Override
+  public long getModificationCount() {
+    return myModificationCount.get();
+  }
+
+  /**
+   * Returns functions of all shards, all of them are loaded for that. Functions of versioned shards keep their
+   * versions, so the same function may be listed once per version.
+   */
   public List<FunctionTypeInformation> getAsList() {
-    return new ArrayList<FunctionTypeInformation>(myNamesToFunctions.values());
+    return getAsList(-1);
+  }
+
+  /**
+   * Same as {@link #getAsList()}, but waits for loading at most specified time, so that it can be called from
+   * UI. Functions of shards not loaded in time are omitted, {@link #isLoaded()} tells whether the list is full.
+   *
+   * @param timeout Maximum time to wait in milliseconds, negative to wait without limit.
+   */
+  public List<FunctionTypeInformation> getAsList(long timeout) {
+    long deadline = System.currentTimeMillis() + timeout;
+    List<FunctionTypeInformation> functions = new ArrayList<FunctionTypeInformation>();
+    if (!waitForMigration(timeout)) {
+      return functions;
+    }
+    findShards();
+    // Shards are loaded in parallel, and then waited for one by one
+    for (TypeInformationShard shard : myShards.values()) {
+      shard.startLoading(myOnShardLoaded);
+    }
+    for (Map.Entry<String, TypeInformationShard> entry : myShards.entrySet()) {
+      String version = getShardVersion(entry.getKey());
+      List<FunctionTypeInformation> shardFunctions =
+        timeout < 0 ? entry.getValue().getAsList() : entry.getValue().getAsList(Math.max(0, deadline - System.currentTimeMillis()));
+      if (shardFunctions != null) {
+        for (FunctionTypeInformation function : shardFunctions) {
+          functions.add(version != null ? function.withVersion(version) : function);
+        }
+      }
+    }
+    return functions;
   }
 
+  /**
+   * Schedules saving of the database on a pooled thread. Requests made within a short period are coalesced
+   * into a single write.
+   */
   public void save() {
+    mySaveAlarm.cancelAllRequests();
+    mySaveAlarm.addRequest(new Runnable() {
+      @Override
+      public void run() {
+        saveShards();
+      }
+    }, SAVE_DELAY);
+  }
+
+  /**
+   * Immediately saves all pending modifications on the calling thread.
+   */
+  public void flush() {
+    mySaveAlarm.cancelAllRequests();
+    saveShards();
+  }
+
+  /**
+   * Saves modified shards.
+   *
+   * @return false if some modifications couldn't be written.
+   */
+  private boolean saveShards() {
+    boolean saved = true;
+    for (TypeInformationShard shard : myShards.values()) {
+      if (shard.isModified()) {
+        saved &= shard.save();
+      }
+    }
+    return saved;
+  }
+
+  /**
+   * Adds all functions from specified JSON file to the database, each to the shard for the version it was exported
+   * with. Functions are not saved automatically.
+   */
+  public void importFromJson(@NotNull File file) {
+    importFromJson(file, null);
+  }
+
+  /**
+   * Adds all functions from specified JSON file to shards for specified version of libraries, or for versions
+   * the functions were exported with if it is null. Functions are not saved automatically.
+   */
+  public void importFromJson(@NotNull File file, @Nullable String version) {
+    List<FunctionTypeInformation> functions = loadJson(file);
+    if (functions != null) {
+      for (FunctionTypeInformation function : functions) {
+        putFunction(function, version != null ? version : function.getVersion(), false);
+      }
+    }
+  }
+
+  /**
+   * Writes all functions of the database into specified file in JSON format. Functions of versioned shards are
+   * written with their versions.
+   */
+  public void exportToJson(@NotNull File file) {
     OutputStream outputStream = null;
     try {
-      outputStream = new FileOutputStream(CACHE_PATH);
+      outputStream = new FileOutputStream(file);
       Writer writer = new OutputStreamWriter(outputStream, "UTF-8");
       Gson gson = new GsonBuilder().setPrettyPrinting().create();
       String json = gson.toJson(getAsList());
@@ -92,13 +528,21 @@ public class TypeInformationCache {
   }
 
   @Nullable
-  private List<FunctionTypeInformation> load() {
+  private static List<FunctionTypeInformation> loadJson(@NotNull File file) {
     InputStream inputStream = null;
     try {
-      inputStream = new FileInputStream(CACHE_PATH);
+      inputStream = new FileInputStream(file);
       BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, "UTF-8"));
       Gson gson = new Gson();
-      return gson.fromJson(reader, DATA_TYPE);
+      List<FunctionTypeInformation> functions = gson.fromJson(reader, DATA_TYPE);
+      if (functions == null) {
+        return null;
+      }
+      List<FunctionTypeInformation> result = new ArrayList<FunctionTypeInformation>(functions.size());
+      for (FunctionTypeInformation function : functions) {
+        result.add(FunctionTypeInformation.copyOf(function));
+      }
+      return result;
     }
     catch (IOException e) {
       return null;
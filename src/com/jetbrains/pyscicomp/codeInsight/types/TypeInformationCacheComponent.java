@@ -0,0 +1,42 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jetbrains.pyscicomp.codeInsight.types;
+
+import com.intellij.openapi.components.ApplicationComponent;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Converts the type database saved by previous versions at application startup and writes pending modifications
+ * on shutdown.
+ */
+public class TypeInformationCacheComponent implements ApplicationComponent {
+
+  @Override
+  public void initComponent() {
+    TypeInformationCache.getInstance().startLoading();
+  }
+
+  @Override
+  public void disposeComponent() {
+    TypeInformationCache.getInstance().flush();
+  }
+
+  @NotNull
+  @Override
+  public String getComponentName() {
+    return "TypeInformationCacheComponent";
+  }
+}
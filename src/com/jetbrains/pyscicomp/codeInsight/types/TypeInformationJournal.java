@@ -0,0 +1,283 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jetbrains.pyscicomp.codeInsight.types;
+
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append-only log of modifications made to the type database since its snapshot was written.
+ */
+public class TypeInformationJournal {
+
+  private static final Logger LOG = Logger.getInstance(TypeInformationJournal.class.getName());
+
+  private static final byte PUT = 1;
+  private static final byte REMOVE = 2;
+  // Minimal sizes of a parameter and of a permissible value in a record, used to reject damaged counts
+  private static final int MIN_PARAMETER_SIZE = 1 + 1 + 4;
+  private static final int MIN_VALUE_SIZE = 2;
+
+  /**
+   * Single modification of the database: either new type information for a function or its removal.
+   */
+  public static class Record {
+
+    private final String myName;
+    private final FunctionTypeInformation myFunction;
+
+    private Record(@NotNull String name, @Nullable FunctionTypeInformation function) {
+      myName = name;
+      myFunction = function;
+    }
+
+    @NotNull
+    public static Record put(@NotNull FunctionTypeInformation function) {
+      return new Record(function.getName(), function);
+    }
+
+    @NotNull
+    public static Record remove(@NotNull String name) {
+      return new Record(name, null);
+    }
+  }
+
+  private final File myFile;
+
+  public TypeInformationJournal(@NotNull File file) {
+    myFile = file;
+  }
+
+  public long length() {
+    return myFile.length();
+  }
+
+  /**
+   * Appends specified records to the journal. If writing fails, the journal is truncated back to its previous
+   * length, so that records appended later don't follow a partially written one.
+   */
+  public void append(@NotNull List<Record> records) throws IOException {
+    long previousLength = myFile.length();
+    try {
+      doAppend(records);
+    }
+    catch (IOException e) {
+      truncate(previousLength);
+      throw e;
+    }
+  }
+
+  private void doAppend(@NotNull List<Record> records) throws IOException {
+    DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(myFile, true)));
+    try {
+      for (Record record : records) {
+        if (record.myFunction != null) {
+          output.writeByte(PUT);
+          writeFunction(output, record.myFunction);
+        } else {
+          output.writeByte(REMOVE);
+          output.writeUTF(record.myName);
+        }
+      }
+    }
+    finally {
+      output.close();
+    }
+  }
+
+  /**
+   * Applies all records of the journal to specified map, removed functions are mapped to null. A damaged tail of
+   * the journal, e.g. after an interrupted write, is truncated, so that records appended afterwards are readable.
+   *
+   * @return false if the journal had a damaged tail.
+   */
+  public boolean replay(@NotNull Map<String, FunctionTypeInformation> namesToFunctions) {
+    if (!myFile.exists()) {
+      return true;
+    }
+    DataInputStream input = null;
+    CountingInputStream counter = null;
+    // Length of the journal up to the end of the last readable record
+    long intactLength = 0;
+    boolean intact = false;
+    try {
+      long fileLength = myFile.length();
+      counter = new CountingInputStream(new BufferedInputStream(new FileInputStream(myFile)));
+      input = new DataInputStream(counter);
+      while (true) {
+        int operation = input.read();
+        if (operation == -1) {
+          intact = true;
+          break;
+        }
+        if (operation == PUT) {
+          FunctionTypeInformation function = readFunction(input, fileLength - counter.myCount);
+          namesToFunctions.put(function.getName(), function);
+        } else if (operation == REMOVE) {
+          namesToFunctions.put(input.readUTF(), null);
+        } else {
+          break;
+        }
+        intactLength = counter.myCount;
+      }
+    }
+    catch (IOException e) {
+      // damaged tail
+    }
+    finally {
+      if (input != null) {
+        try {
+          input.close();
+        }
+        catch (IOException e) {
+        }
+      }
+    }
+    if (!intact) {
+      truncate(intactLength);
+    }
+    return intact;
+  }
+
+  private void truncate(long length) {
+    try {
+      RandomAccessFile file = new RandomAccessFile(myFile, "rw");
+      try {
+        file.setLength(length);
+      }
+      finally {
+        file.close();
+      }
+    }
+    catch (IOException e) {
+      LOG.info("Cannot truncate damaged type database journal " + myFile, e);
+    }
+  }
+
+  public void clear() throws IOException {
+    if (myFile.exists() && !myFile.delete()) {
+      throw new IOException("Cannot delete " + myFile);
+    }
+  }
+
+  /**
+   * Counts bytes read from the underlying stream.
+   */
+  private static class CountingInputStream extends FilterInputStream {
+
+    private long myCount = 0;
+
+    private CountingInputStream(@NotNull InputStream input) {
+      super(input);
+    }
+
+    @Override
+    public int read() throws IOException {
+      int result = super.read();
+      if (result != -1) {
+        myCount++;
+      }
+      return result;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int result = super.read(b, off, len);
+      if (result > 0) {
+        myCount += result;
+      }
+      return result;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long result = super.skip(n);
+      myCount += result;
+      return result;
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+  }
+
+  private static void writeFunction(@NotNull DataOutput output, @NotNull FunctionTypeInformation function) throws IOException {
+    output.writeUTF(function.getName());
+    writeNullableString(output, function.getReturnType());
+    List<ParameterTypeInformation> parameters = function.getParameters();
+    output.writeInt(parameters.size());
+    for (ParameterTypeInformation parameter : parameters) {
+      writeNullableString(output, parameter.getName());
+      writeNullableString(output, parameter.getType());
+      output.writeInt(parameter.getPermissibleValues().size());
+      for (String value : parameter.getPermissibleValues()) {
+        output.writeUTF(value);
+      }
+    }
+  }
+
+  /**
+   * Reads type information of a function. Counts of parameters and values are checked against the number of
+   * bytes left in the journal, so that a damaged record fails with an exception instead of a huge allocation.
+   *
+   * @param available Number of bytes left in the journal starting from the record.
+   */
+  @NotNull
+  private static FunctionTypeInformation readFunction(@NotNull DataInput input, long available) throws IOException {
+    String name = input.readUTF();
+    String returnType = readNullableString(input);
+    int parameterCount = readCount(input, available, MIN_PARAMETER_SIZE);
+    List<ParameterTypeInformation> parameters = new ArrayList<ParameterTypeInformation>(parameterCount);
+    for (int i = 0; i < parameterCount; i++) {
+      String parameterName = readNullableString(input);
+      String parameterType = readNullableString(input);
+      int valueCount = readCount(input, available, MIN_VALUE_SIZE);
+      List<String> values = new ArrayList<String>(valueCount);
+      for (int j = 0; j < valueCount; j++) {
+        values.add(input.readUTF());
+      }
+      parameters.add(new ParameterTypeInformation(parameterName, parameterType, values));
+    }
+    return new FunctionTypeInformation(name, returnType, parameters);
+  }
+
+  private static int readCount(@NotNull DataInput input, long available, int minElementSize) throws IOException {
+    int count = input.readInt();
+    if (count < 0 || count > available / minElementSize) {
+      throw new IOException("Damaged record: count " + count + " exceeds the journal");
+    }
+    return count;
+  }
+
+  private static void writeNullableString(@NotNull DataOutput output, @Nullable String value) throws IOException {
+    output.writeBoolean(value != null);
+    if (value != null) {
+      output.writeUTF(value);
+    }
+  }
+
+  @Nullable
+  private static String readNullableString(@NotNull DataInput input) throws IOException {
+    return input.readBoolean() ? input.readUTF() : null;
+  }
+}
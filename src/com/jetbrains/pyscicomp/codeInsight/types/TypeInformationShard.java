@@ -0,0 +1,432 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jetbrains.pyscicomp.codeInsight.types;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Part of the type database containing functions of a single library. The shard is stored as a snapshot in
+ * binary format (see {@link BinaryTypeDatabase}) and a journal of modifications made since the snapshot was
+ * written (see {@link TypeInformationJournal}); the journal is compacted into a new snapshot once it grows large.
+ * <p/>
+ * The snapshot stays memory-mapped while in use, and a mapped file cannot be replaced or deleted on Windows.
+ * So each compaction writes the next generation of the snapshot into a new file, e.g. "numpy#3.bin", and the
+ * latest complete generation is used on loading. Outdated generations are deleted once they aren't mapped.
+ * <p/>
+ * The shard is loaded on a pooled thread, until then it answers no type information for any function.
+ * Queries may come from any thread and take no locks, modifications are serialized.
+ */
+class TypeInformationShard {
+
+  private static final Logger LOG = Logger.getInstance(TypeInformationShard.class.getName());
+
+  private static final long COMPACTION_THRESHOLD = 256 * 1024;
+  private static final String SNAPSHOT_EXTENSION = ".bin";
+  private static final String JOURNAL_EXTENSION = ".journal";
+  private static final String TEMP_EXTENSION = ".tmp";
+  private static final char GENERATION_SEPARATOR = '#';
+
+  // Marks functions removed since the snapshot was written
+  private static final FunctionTypeInformation REMOVED =
+    new FunctionTypeInformation("", null, Collections.<ParameterTypeInformation>emptyList());
+
+  private final File myDirectory;
+  private final String myName;
+
+  @Nullable
+  private volatile BinaryTypeDatabase myDatabase;
+  // Generation of the mapped snapshot or -1 if there is no snapshot
+  private int myGeneration = -1;
+  // Modifications made since the snapshot was written
+  private final Map<String, FunctionTypeInformation> myNamesToFunctions = new ConcurrentHashMap<String, FunctionTypeInformation>();
+
+  private volatile boolean myLoaded = false;
+  @Nullable
+  private Future<?> myLoading = null;
+
+  private final TypeInformationJournal myJournal;
+  private final List<TypeInformationJournal.Record> myPendingRecords = new ArrayList<TypeInformationJournal.Record>();
+  private boolean myCompactionRequested = false;
+  private final Object mySaveLock = new Object();
+
+  TypeInformationShard(@NotNull File directory, @NotNull String name) {
+    myDirectory = directory;
+    myName = name;
+    myJournal = new TypeInformationJournal(new File(directory, name + JOURNAL_EXTENSION));
+  }
+
+  /**
+   * Returns name of shard which specified file belongs to or null if it is not a file of a shard.
+   */
+  @Nullable
+  static String getShardName(@NotNull String fileName) {
+    if (fileName.endsWith(JOURNAL_EXTENSION)) {
+      return fileName.substring(0, fileName.length() - JOURNAL_EXTENSION.length());
+    }
+    if (fileName.endsWith(SNAPSHOT_EXTENSION)) {
+      String name = fileName.substring(0, fileName.length() - SNAPSHOT_EXTENSION.length());
+      int separator = name.lastIndexOf(GENERATION_SEPARATOR);
+      return separator != -1 ? name.substring(0, separator) : name;
+    }
+    return null;
+  }
+
+  /**
+   * Returns file of specified generation of the snapshot, the first generation is named without number for
+   * compatibility with shards written before generations were introduced.
+   */
+  @NotNull
+  private File getSnapshotFile(int generation) {
+    String name = generation > 0 ? myName + GENERATION_SEPARATOR + generation : myName;
+    return new File(myDirectory, name + SNAPSHOT_EXTENSION);
+  }
+
+  /**
+   * Returns generations of the snapshot found on disk in descending order.
+   */
+  @NotNull
+  private List<Integer> findGenerations() {
+    List<Integer> generations = new ArrayList<Integer>();
+    String[] fileNames = myDirectory.list();
+    if (fileNames != null) {
+      for (String fileName : fileNames) {
+        if (!fileName.startsWith(myName) || !fileName.endsWith(SNAPSHOT_EXTENSION)) {
+          continue;
+        }
+        String suffix = fileName.substring(myName.length(), fileName.length() - SNAPSHOT_EXTENSION.length());
+        if (suffix.isEmpty()) {
+          generations.add(0);
+        } else if (suffix.charAt(0) == GENERATION_SEPARATOR) {
+          try {
+            generations.add(Integer.parseInt(suffix.substring(1)));
+          }
+          catch (NumberFormatException e) {
+            // not a snapshot of this shard
+          }
+        }
+      }
+    }
+    Collections.sort(generations, Collections.reverseOrder());
+    return generations;
+  }
+
+  /**
+   * Deletes generations of the snapshot other than the current one. Files still mapped on Windows are kept
+   * until the next attempt.
+   */
+  private void deleteOutdatedGenerations(int currentGeneration) {
+    for (int generation : findGenerations()) {
+      if (generation != currentGeneration) {
+        File file = getSnapshotFile(generation);
+        if (!file.delete()) {
+          LOG.debug("Cannot delete outdated type database " + file);
+        }
+      }
+    }
+  }
+
+  /**
+   * Starts loading the shard on a pooled thread unless it has been already started.
+   *
+   * @param onLoaded Called on the pooled thread once the shard is loaded, if it contains any functions.
+   */
+  synchronized void startLoading(@Nullable final Runnable onLoaded) {
+    if (myLoading == null) {
+      myLoading = ApplicationManager.getApplication().executeOnPooledThread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            load();
+          }
+          finally {
+            // Even if loading failed, the shard must not be reported as loading forever
+            myLoaded = true;
+          }
+          if (onLoaded != null && (myDatabase != null || !myNamesToFunctions.isEmpty())) {
+            onLoaded.run();
+          }
+        }
+      });
+    }
+  }
+
+  boolean isLoaded() {
+    return myLoaded;
+  }
+
+  /**
+   * Returns true if loading of the shard has been started, but hasn't finished yet.
+   */
+  synchronized boolean isLoading() {
+    return myLoading != null && !myLoaded;
+  }
+
+  private void waitForLoading() {
+    waitForLoading(-1);
+  }
+
+  /**
+   * Starts loading of the shard if needed and waits until it is loaded.
+   *
+   * @param timeout Maximum time to wait in milliseconds, negative to wait without limit.
+   * @return true if the shard is loaded.
+   */
+  private boolean waitForLoading(long timeout) {
+    if (!myLoaded) {
+      startLoading(null);
+      Future<?> loading;
+      synchronized (this) {
+        loading = myLoading;
+      }
+      try {
+        if (loading != null) {
+          if (timeout < 0) {
+            loading.get();
+          } else {
+            loading.get(timeout, TimeUnit.MILLISECONDS);
+          }
+        }
+      }
+      catch (InterruptedException e) {
+        LOG.info("Interrupted while loading type database " + myName, e);
+      }
+      catch (ExecutionException e) {
+        LOG.info("Cannot load type database " + myName, e);
+      }
+      catch (TimeoutException e) {
+        return false;
+      }
+    }
+    return myLoaded;
+  }
+
+  private void load() {
+    // Generations are renamed into place only once written completely, so the latest one is intact
+    BinaryTypeDatabase database = null;
+    int generation = -1;
+    for (int candidate : findGenerations()) {
+      database = map(getSnapshotFile(candidate));
+      if (database != null) {
+        generation = candidate;
+        break;
+      }
+    }
+    if (generation != -1) {
+      deleteOutdatedGenerations(generation);
+    }
+    Map<String, FunctionTypeInformation> journaled = new HashMap<String, FunctionTypeInformation>();
+    boolean journalIntact = myJournal.replay(journaled);
+    synchronized (this) {
+      myDatabase = database;
+      myGeneration = generation;
+      for (Map.Entry<String, FunctionTypeInformation> entry : journaled.entrySet()) {
+        if (!myNamesToFunctions.containsKey(entry.getKey())) {
+          FunctionTypeInformation function = entry.getValue();
+          myNamesToFunctions.put(entry.getKey(), function != null ? function : REMOVED);
+        }
+      }
+      myCompactionRequested = !journalIntact || myJournal.length() > COMPACTION_THRESHOLD;
+    }
+    if (!journalIntact) {
+      LOG.info("Type database journal of " + myName + " is damaged, its tail is discarded");
+    }
+    doSave();
+  }
+
+  /**
+   * Returns type information for specified function or null if it is unknown or the shard is not loaded yet.
+   */
+  @Nullable
+  FunctionTypeInformation getFunction(@NotNull String name) {
+    if (!myLoaded) {
+      return null;
+    }
+    // The snapshot is replaced before modifications saved in it are dropped, so read in the reverse order
+    FunctionTypeInformation function = myNamesToFunctions.get(name);
+    if (function != null) {
+      return function != REMOVED ? function : null;
+    }
+    BinaryTypeDatabase database = myDatabase;
+    return database != null ? database.getFunction(name) : null;
+  }
+
+  synchronized void putFunction(@NotNull FunctionTypeInformation function) {
+    myNamesToFunctions.put(function.getName(), function);
+    myPendingRecords.add(TypeInformationJournal.Record.put(function));
+  }
+
+  synchronized void removeFunction(@NotNull String name) {
+    myNamesToFunctions.put(name, REMOVED);
+    myPendingRecords.add(TypeInformationJournal.Record.remove(name));
+  }
+
+  @NotNull
+  List<FunctionTypeInformation> getAsList() {
+    waitForLoading();
+    return doGetAsList();
+  }
+
+  /**
+   * Same as {@link #getAsList()}, but waits for loading of the shard at most specified time in milliseconds.
+   *
+   * @return Functions of the shard or null if it isn't loaded in time.
+   */
+  @Nullable
+  List<FunctionTypeInformation> getAsList(long timeout) {
+    return waitForLoading(timeout) ? doGetAsList() : null;
+  }
+
+  private synchronized List<FunctionTypeInformation> doGetAsList() {
+    Map<String, FunctionTypeInformation> functions = new HashMap<String, FunctionTypeInformation>();
+    BinaryTypeDatabase database = myDatabase;
+    if (database != null) {
+      for (FunctionTypeInformation function : database.getAll()) {
+        functions.put(function.getName(), function);
+      }
+    }
+    for (Map.Entry<String, FunctionTypeInformation> entry : myNamesToFunctions.entrySet()) {
+      if (entry.getValue() != REMOVED) {
+        functions.put(entry.getKey(), entry.getValue());
+      } else {
+        functions.remove(entry.getKey());
+      }
+    }
+    return new ArrayList<FunctionTypeInformation>(functions.values());
+  }
+
+  synchronized boolean isModified() {
+    return !myPendingRecords.isEmpty();
+  }
+
+  /**
+   * Saves all pending modifications on the calling thread, loading the shard first if needed.
+   *
+   * @return false if modifications couldn't be written.
+   */
+  boolean save() {
+    waitForLoading();
+    return doSave();
+  }
+
+  /**
+   * Appends pending modifications to the journal and compacts it if needed.
+   */
+  private boolean doSave() {
+    synchronized (mySaveLock) {
+      List<TypeInformationJournal.Record> records;
+      synchronized (this) {
+        records = new ArrayList<TypeInformationJournal.Record>(myPendingRecords);
+        myPendingRecords.clear();
+      }
+      if (!records.isEmpty()) {
+        try {
+          if (!myDirectory.exists() && !myDirectory.mkdirs()) {
+            throw new IOException("Cannot create " + myDirectory);
+          }
+          myJournal.append(records);
+        }
+        catch (IOException e) {
+          // The journal is truncated back by append(), so the records are written from scratch on retry
+          LOG.info("Cannot write type database journal", e);
+          synchronized (this) {
+            myPendingRecords.addAll(0, records);
+          }
+          return false;
+        }
+      }
+
+      boolean compact;
+      synchronized (this) {
+        compact = myCompactionRequested || myJournal.length() > COMPACTION_THRESHOLD;
+      }
+      if (compact) {
+        compact();
+      }
+      return true;
+    }
+  }
+
+  /**
+   * Writes the next generation of the snapshot containing all journaled modifications, switches to it and
+   * clears the journal. Should be called under save lock, so that no records are appended meanwhile.
+   */
+  private void compact() {
+    Map<String, FunctionTypeInformation> savedModifications;
+    List<FunctionTypeInformation> functions;
+    int generation;
+    synchronized (this) {
+      savedModifications = new HashMap<String, FunctionTypeInformation>(myNamesToFunctions);
+      functions = doGetAsList();
+      myCompactionRequested = false;
+      generation = myGeneration + 1;
+    }
+
+    // The file of a new generation isn't mapped by anyone, so it can be renamed into place on any platform
+    File file = getSnapshotFile(generation);
+    File tempFile = new File(file.getPath() + TEMP_EXTENSION);
+    BinaryTypeDatabase database;
+    try {
+      BinaryTypeDatabase.write(functions, tempFile);
+      if (!tempFile.renameTo(file)) {
+        throw new IOException("Cannot rename " + tempFile + " to " + file);
+      }
+      database = BinaryTypeDatabase.map(file);
+      myJournal.clear();
+    }
+    catch (IOException e) {
+      LOG.info("Cannot compact type database " + myName, e);
+      if (tempFile.exists() && !tempFile.delete()) {
+        LOG.debug("Cannot delete " + tempFile);
+      }
+      return;
+    }
+
+    synchronized (this) {
+      myDatabase = database;
+      myGeneration = generation;
+      // Keep functions modified while the snapshot was written
+      for (Map.Entry<String, FunctionTypeInformation> entry : savedModifications.entrySet()) {
+        if (myNamesToFunctions.get(entry.getKey()) == entry.getValue()) {
+          myNamesToFunctions.remove(entry.getKey());
+        }
+      }
+    }
+    deleteOutdatedGenerations(generation);
+  }
+
+  @Nullable
+  static BinaryTypeDatabase map(@NotNull File file) {
+    try {
+      return BinaryTypeDatabase.map(file);
+    }
+    catch (IOException e) {
+      LOG.info("Cannot read type database " + file, e);
+      return null;
+    }
+  }
+}
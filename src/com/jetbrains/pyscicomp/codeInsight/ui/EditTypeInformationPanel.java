@@ -99,7 +99,7 @@ public class EditTypeInformationPanel extends JPanel {
     for (EditParameterPanel field : myParameterFields) {
       parameters.add(field.getEditResult());
     }
-    return new FunctionTypeInformation(myFunction.getName(), myReturnTypeField.getText(), parameters);
+    return new FunctionTypeInformation(myFunction.getName(), myReturnTypeField.getText(), parameters, myFunction.getVersion());
   }
 
   public boolean isModified() {
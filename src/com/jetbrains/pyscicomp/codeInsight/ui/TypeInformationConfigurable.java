@@ -32,6 +32,8 @@ import org.jetbrains.annotations.Nullable;
 import javax.swing.*;
 import javax.swing.event.*;
 import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.event.ItemEvent;
 import java.awt.event.ItemListener;
 import java.util.*;
@@ -42,6 +44,11 @@ import java.util.regex.PatternSyntaxException;
 
 public class TypeInformationConfigurable implements Configurable {
 
+  // The list is filled on the event dispatch thread, so it waits for loading of the database only briefly
+  // and is refreshed once the database is loaded
+  private static final long LOADING_TIMEOUT = 100;
+  private static final int REFRESH_DELAY = 500;
+
   private boolean myModified = false;
 
   @Nullable
@@ -52,6 +59,16 @@ public class TypeInformationConfigurable implements Configurable {
   private final FunctionsListModel myListModel = new FunctionsListModel();
   private final JTextField myFilterTextField = new JTextField();
   private final JCheckBox mySortCheckBox = new JCheckBox("Exactly matches", false);
+  private final JLabel myLoadingLabel = new JLabel("Loading type information...");
+  private final javax.swing.Timer myRefreshTimer = new javax.swing.Timer(REFRESH_DELAY, new ActionListener() {
+    @Override
+    public void actionPerformed(ActionEvent e) {
+      if (TypeInformationCache.getInstance().isLoaded()) {
+        ((javax.swing.Timer)e.getSource()).stop();
+        onFilterChanged();
+      }
+    }
+  });
 
   private static class FunctionsListModel implements ListModel {
 
@@ -93,7 +110,7 @@ public class TypeInformationConfigurable implements Configurable {
     }
 
     private void applyFilter(@Nullable Pattern filterPattern, boolean exactlyMatches) {
-      List<FunctionTypeInformation> functions = TypeInformationCache.getInstance().getAsList();
+      List<FunctionTypeInformation> functions = TypeInformationCache.getInstance().getAsList(LOADING_TIMEOUT);
       if (filterPattern == null) {
         myDisplayedFunctions = functions;
       } else {
@@ -143,6 +160,18 @@ public class TypeInformationConfigurable implements Configurable {
         myFilterTextField.setForeground(Color.RED);
       }
     }
+    updateLoadingState();
+  }
+
+  /**
+   * Shows whether the list is incomplete since the database is still being loaded and schedules its refresh.
+   */
+  private void updateLoadingState() {
+    boolean loaded = TypeInformationCache.getInstance().isLoaded();
+    myLoadingLabel.setVisible(!loaded);
+    if (!loaded && !myRefreshTimer.isRunning()) {
+      myRefreshTimer.start();
+    }
   }
 
   private JComponent createControlsPanel() {
@@ -164,6 +193,8 @@ public class TypeInformationConfigurable implements Configurable {
       }
     });
     controlsPanel.add(mySortCheckBox, BorderLayout.EAST);
+    controlsPanel.add(myLoadingLabel, BorderLayout.SOUTH);
+    updateLoadingState();
 
     return controlsPanel;
   }
@@ -234,7 +265,7 @@ public class TypeInformationConfigurable implements Configurable {
 
   @Override
   public void disposeUIResources() {
-
+    myRefreshTimer.stop();
   }
 
   private void edit() {
@@ -22,12 +22,29 @@ public class DocStringParameter {
 
   private final String myName;
   private final String myType;
-  private final String myDescription;
+  private volatile String myDescription;
+  private volatile PermissibleValues myPermissibleValues;
+  // Source of the description which isn't built yet
+  private final NumpyDocStringScanner myScanner;
+  private final int myDescriptionFrom;
+  private final int myDescriptionTo;
 
   public DocStringParameter(@NotNull String name, @Nullable String type, @Nullable String description) {
     myName = name;
     myType = type;
     myDescription = description;
+    myScanner = null;
+    myDescriptionFrom = 0;
+    myDescriptionTo = 0;
+  }
+
+  DocStringParameter(@NotNull String name, @Nullable String type, @NotNull NumpyDocStringScanner scanner,
+                     int descriptionFrom, int descriptionTo) {
+    myName = name;
+    myType = type;
+    myScanner = scanner;
+    myDescriptionFrom = descriptionFrom;
+    myDescriptionTo = descriptionTo;
   }
 
   public String getName() {
@@ -39,6 +56,24 @@ public class DocStringParameter {
   }
 
   public String getDescription() {
-    return myDescription;
+    String description = myDescription;
+    if (description == null && myScanner != null) {
+      description = myScanner.getDescription(myDescriptionFrom, myDescriptionTo);
+      myDescription = description;
+    }
+    return description;
+  }
+
+  /**
+   * Returns permissible values listed in the type of parameter. Values are extracted once per parameter.
+   */
+  @NotNull
+  public PermissibleValues getPermissibleValues() {
+    PermissibleValues permissibleValues = myPermissibleValues;
+    if (permissibleValues == null) {
+      permissibleValues = PermissibleValues.fromNumpyDocType(myType);
+      myPermissibleValues = permissibleValues;
+    }
+    return permissibleValues;
   }
 }
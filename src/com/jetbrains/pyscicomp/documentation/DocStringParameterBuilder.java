@@ -1,40 +0,0 @@
-/*
- * Copyright 2000-2012 JetBrains s.r.o.
- *
- * Licensed under the Apache License, Version 2.0 (the "License");
- * you may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- *
- * http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- */
-package com.jetbrains.pyscicomp.documentation;
-
-public class DocStringParameterBuilder {
-
-  private String myName = "";
-  private String myType = "";
-  private StringBuilder myDescription = new StringBuilder();
-
-  public void setName(String name) {
-    myName = name;
-  }
-
-  public void setType(String type) {
-    myType = type;
-  }
-
-  public void appendDescription(String text) {
-    myDescription.append(" ");
-    myDescription.append(text);
-  }
-
-  public DocStringParameter build() {
-    return new DocStringParameter(myName, myType, myDescription.toString());
-  }
-}
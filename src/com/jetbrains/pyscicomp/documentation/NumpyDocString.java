@@ -15,47 +15,183 @@
  */
 package com.jetbrains.pyscicomp.documentation;
 
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.module.ModuleUtil;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.*;
+import com.intellij.openapi.util.Comparing;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.Pair;
+import com.intellij.openapi.util.Ref;
+import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiDirectory;
 import com.intellij.psi.PsiElement;
-import com.intellij.psi.PsiFileSystemItem;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.util.CachedValue;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import com.intellij.psi.util.PsiModificationTracker;
+import com.intellij.util.Function;
+import com.jetbrains.pyscicomp.util.ParameterIndex;
 import com.jetbrains.python.psi.*;
 import com.jetbrains.python.psi.impl.PyQualifiedName;
 import com.jetbrains.python.psi.resolve.ResolveImportUtil;
+import com.jetbrains.python.psi.types.TypeEvalContext;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class NumpyDocString {
 
-  private static final Pattern LINE_SEPARATOR = Pattern.compile("\n|\r|\r\n");
-  private static final Pattern WHITE_SPACED_LINE = Pattern.compile("^[ \t]+$");
-  private static final Pattern ANY_INDENT = Pattern.compile("(^[ \t]*)[^ \t\r\n]");
-  private static final Pattern HAS_INDENT = Pattern.compile("(^[ \t]+)[^ \t\r\n]");
-  private static final Pattern SIGNATURE = Pattern.compile("^([\\w., ]+=)?\\s*[\\w\\.]+\\(.*\\)$");
-  private static final Pattern SECTION_HEADER = Pattern.compile("^[-=]+");
-  private static final Pattern PARAMETER_WITH_TYPE = Pattern.compile("^(.+) : (.+)$");
-  private static final Pattern PARAMETER_WITHOUT_TYPE = Pattern.compile("^([^ :,]+)$");
-  private static final Pattern REDIRECT = Pattern.compile("^Refer to `(.*)` for full documentation.$");
-
   private static final Pattern NUMPY_UNION_PATTERN = Pattern.compile("^\\{(.*)\\}$");
   private static final Pattern QUOTED_STRING_PATTERN = Pattern.compile("^(?:\\\"(.*)\\\")|(?:\\'(.*)\\')$");
 
+  private static final Key<CachedValue<ParsedDocString>> PARSED_DOCSTRING_KEY = Key.create("NumpyDocString.PARSED_DOCSTRING");
+  private static final Key<CachedValue<ConcurrentMap<Pair<Object, String>, Ref<PyFunction>>>> REDIRECTS_KEY =
+    Key.create("NumpyDocString.REDIRECTS");
+  // Longer chains of redirects are considered cyclic, e.g. A -> B -> A
+  private static final int MAX_REDIRECTS = 5;
+
   private final String mySignature;
-  private final List<DocStringParameter> myParameters = new ArrayList<DocStringParameter>();
-  private final List<DocStringParameter> myReturns = new ArrayList<DocStringParameter>();
+  // Shared with copies of the docstring made for other signatures, so sections are parsed and indexed only once
+  private final Sections mySections;
 
-  private NumpyDocString(@Nullable String signature, @NotNull List<String> lines)
+  private NumpyDocString(@Nullable String signature,
+                         @NotNull List<DocStringParameter> parameters,
+                         @NotNull List<DocStringParameter> returns)
+    throws NotNumpyDocStringException {
+    mySignature = signature;
+    mySections = new Sections(null);
+    mySections.myParameters = Collections.unmodifiableList(parameters);
+    mySections.myReturns = Collections.unmodifiableList(returns);
+    if (returns.size() == 0 && parameters.size() == 0) {
+      throw new NotNumpyDocStringException(signature);
+    }
+  }
+
+  /**
+   * Creates docstring which sections are parsed lazily by specified scanner with already indexed sections.
+   */
+  private NumpyDocString(@Nullable String signature, @NotNull NumpyDocStringScanner scanner)
     throws NotNumpyDocStringException {
     mySignature = signature;
-    parseSections(lines);
-    if (myReturns.size() == 0 && myParameters.size() == 0) {
+    mySections = new Sections(scanner);
+    if (!scanner.hasParameters(NumpyDocStringScanner.RETURNS) && !scanner.hasParameters(NumpyDocStringScanner.PARAMETERS)) {
       throw new NotNumpyDocStringException(signature);
     }
   }
 
+  private NumpyDocString(@Nullable String signature, @NotNull NumpyDocString original) {
+    mySignature = signature;
+    mySections = original.mySections;
+  }
+
+  /**
+   * Lazily parsed sections of a docstring and the index of its parameters.
+   */
+  private static class Sections {
+
+    // Source of sections which aren't parsed yet, null if the docstring is created from parsed sections
+    private final NumpyDocStringScanner myScanner;
+    private volatile List<DocStringParameter> myParameters;
+    private volatile List<DocStringParameter> myReturns;
+    private volatile ParameterIndex<DocStringParameter> myParameterIndex;
+    private volatile boolean myLookedUp;
+
+    private Sections(@Nullable NumpyDocStringScanner scanner) {
+      myScanner = scanner;
+    }
+
+    @NotNull
+    private List<DocStringParameter> getParameters() {
+      List<DocStringParameter> parameters = myParameters;
+      if (parameters == null) {
+        parameters = Collections.unmodifiableList(myScanner.parseParameters(NumpyDocStringScanner.PARAMETERS));
+        myParameters = parameters;
+      }
+      return parameters;
+    }
+
+    @NotNull
+    private List<DocStringParameter> getReturns() {
+      List<DocStringParameter> returns = myReturns;
+      if (returns == null) {
+        returns = Collections.unmodifiableList(myScanner.parseParameters(NumpyDocStringScanner.RETURNS));
+        myReturns = returns;
+      }
+      return returns;
+    }
+
+    @Nullable
+    private DocStringParameter getNamedParameter(@NotNull String name) {
+      ParameterIndex<DocStringParameter> index = myParameterIndex;
+      if (index == null) {
+        if (myParameters == null && !myLookedUp) {
+          myLookedUp = true;
+          DocStringParameter parameter = myScanner.findParameter(NumpyDocStringScanner.PARAMETERS, name);
+          String unprefixedName = ParameterIndex.removePrefix(name);
+          if (parameter == null && unprefixedName != null) {
+            parameter = myScanner.findParameter(NumpyDocStringScanner.PARAMETERS, unprefixedName);
+          }
+          return parameter;
+        }
+        index = new ParameterIndex<DocStringParameter>(getParameters(), new Function<DocStringParameter, String>() {
+          @Override
+          public String fun(DocStringParameter parameter) {
+            return parameter.getName();
+          }
+        });
+        myParameterIndex = index;
+      }
+      return index.get(name);
+    }
+  }
+
+  /**
+   * Result of parsing the docstring of a single function. Redirects are kept unresolved here, since
+   * their resolution depends on the reference element.
+   */
+  static class ParsedDocString {
+
+    private final String mySignature;
+    private final String myRedirect;
+    private final NumpyDocString myDocString;
+
+    ParsedDocString(@Nullable String signature, @Nullable String redirect, @Nullable NumpyDocString docString) {
+      mySignature = signature;
+      myRedirect = redirect;
+      myDocString = docString;
+    }
+
+    @Nullable
+    String getSignature() {
+      return mySignature;
+    }
+
+    @Nullable
+    String getRedirect() {
+      return myRedirect;
+    }
+
+    @Nullable
+    NumpyDocString getDocString() {
+      return myDocString;
+    }
+
+    /**
+     * Checks whether the docstring provides any information, i.e. it is in Numpy format or redirects to
+     * another function.
+     */
+    boolean isMeaningful() {
+      return myRedirect != null || myDocString != null;
+    }
+  }
+
   @Nullable
   public String getSignature() {
     return mySignature;
@@ -63,24 +199,97 @@ public class NumpyDocString {
 
   @NotNull
   public List<DocStringParameter> getParameters() {
-    return myParameters;
+    return mySections.getParameters();
   }
 
   @NotNull
   public List<DocStringParameter> getReturns() {
-    return myReturns;
+    return mySections.getReturns();
   }
 
+  @NotNull
+  private NumpyDocString withSignature(@Nullable String signature) {
+    if (Comparing.equal(signature, mySignature)) {
+      return this;
+    }
+    return new NumpyDocString(signature, this);
+  }
+
+  /**
+   * Returns parameter with specified name. Name with "p_" prefix also matches parameter documented without
+   * it, see {@link ParameterIndex}.
+   * <p/>
+   * The first lookup is performed in place without parsing the section of parameters, the following ones
+   * use the index of parsed parameters.
+   */
   @Nullable
   public DocStringParameter getNamedParameter(@NotNull String name) {
-    for (DocStringParameter parameter : getParameters()) {
-      if (name.equals(parameter.getName())) {
-        return parameter;
+    return mySections.getNamedParameter(name);
+  }
+
+  /**
+   * Returns cached redirect targets of the project, including redirects which can't be resolved. Resolution
+   * of a redirect depends on the roots of the module or SDK of the reference and on the target function, so
+   * the cache is dropped on root changes and on PSI changes, and resolved functions are not kept past an edit.
+   */
+  @NotNull
+  private static ConcurrentMap<Pair<Object, String>, Ref<PyFunction>> getRedirectsCache(@NotNull final Project project) {
+    CachedValuesManager manager = CachedValuesManager.getManager(project);
+    return manager.getCachedValue(project, REDIRECTS_KEY, new CachedValueProvider<ConcurrentMap<Pair<Object, String>, Ref<PyFunction>>>() {
+      @Override
+      public Result<ConcurrentMap<Pair<Object, String>, Ref<PyFunction>>> compute() {
+        ConcurrentMap<Pair<Object, String>, Ref<PyFunction>> redirects =
+          new ConcurrentHashMap<Pair<Object, String>, Ref<PyFunction>>();
+        return Result.create(redirects, ProjectRootManager.getInstance(project), PsiModificationTracker.MODIFICATION_COUNT);
+      }
+    }, false);
+  }
+
+  /**
+   * Returns module of specified element or, for elements of libraries and SDKs which belong to no module,
+   * the SDK or the library itself.
+   */
+  @Nullable
+  private static Object getRootsOwner(@NotNull PsiElement element) {
+    Module module = ModuleUtil.findModuleForPsiElement(element);
+    if (module != null) {
+      return module;
+    }
+    PsiFile file = element.getContainingFile();
+    VirtualFile virtualFile = file != null ? file.getOriginalFile().getVirtualFile() : null;
+    if (virtualFile == null) {
+      return null;
+    }
+    ProjectFileIndex fileIndex = ProjectRootManager.getInstance(element.getProject()).getFileIndex();
+    for (OrderEntry entry : fileIndex.getOrderEntriesForFile(virtualFile)) {
+      if (entry instanceof JdkOrderEntry) {
+        return ((JdkOrderEntry) entry).getJdk();
+      }
+      if (entry instanceof LibraryOrderEntry) {
+        return ((LibraryOrderEntry) entry).getLibrary();
       }
     }
     return null;
   }
 
+  /**
+   * Same as {@link #resolveRedirectToFunction(String, PsiElement)}, but reuses previous results of resolving
+   * the same redirect from the same module or SDK.
+   */
+  @Nullable
+  private static PyFunction resolveRedirectToFunctionCached(@NotNull String redirect, @NotNull PsiElement reference) {
+    Project project = reference.getProject();
+    ConcurrentMap<Pair<Object, String>, Ref<PyFunction>> redirects = getRedirectsCache(project);
+    Pair<Object, String> key = Pair.create(getRootsOwner(reference), redirect);
+    Ref<PyFunction> cached = redirects.get(key);
+    if (cached != null && (cached.isNull() || cached.get().isValid())) {
+      return cached.get();
+    }
+    PyFunction function = resolveRedirectToFunction(redirect, reference);
+    redirects.put(key, Ref.create(function));
+    return function;
+  }
+
   /**
    * Returns PyFunction object for specified fully qualified name accessible from specified reference.
    *
@@ -121,8 +330,33 @@ public class NumpyDocString {
     return null;
   }
 
+  /**
+   * Parses docstring of specified function. The result is cached until the containing file is modified,
+   * including the case of docstring which is not in Numpy format. If AST of the function isn't loaded, the
+   * docstring is taken from {@link NumpyDocStringIndex} instead.
+   *
+   * @param function Function containing docstring.
+   * @return Parsed docstring or null if function has no docstring.
+   */
+  @Nullable
+  private static ParsedDocString getParsedDocString(@NotNull final PyFunction function) {
+    CachedValuesManager manager = CachedValuesManager.getManager(function.getProject());
+    return manager.getCachedValue(function, PARSED_DOCSTRING_KEY, new CachedValueProvider<ParsedDocString>() {
+      @Override
+      public Result<ParsedDocString> compute() {
+        ParsedDocString parsedDocString;
+        if (function.getStub() != null && NumpyDocStringIndex.isAvailable(function)) {
+          parsedDocString = NumpyDocStringIndex.getParsedDocString(function);
+        } else {
+          parsedDocString = parseDocString(function);
+        }
+        return Result.create(parsedDocString, function.getContainingFile());
+      }
+    }, false);
+  }
+
   @Nullable
-  private static NumpyDocString forFunction(@NotNull PyFunction function, @NotNull PsiElement reference, @Nullable String knownSignature) {
+  static ParsedDocString parseDocString(@NotNull PyFunction function) {
     String docString = function.getDocStringValue();
     if (docString == null && "__init__".equals(function.getName())) {
       // Docstring for constructor can be found in the docstring of class
@@ -132,158 +366,112 @@ public class NumpyDocString {
       }
     }
 
-    if (docString != null) {
-      List<String> lines = splitByLines(docString);
-      dedent(lines);
-
-      String signature = null;
-      if (SIGNATURE.matcher(lines.get(0)).matches()) {
-        signature = lines.get(0);
-        lines.remove(0);
-        dedent(lines);
-      }
-
-      String redirect = findRedirect(lines);
-      if (redirect != null) {
-        PyFunction resolvedFunction = resolveRedirectToFunction(redirect, reference);
-        if (resolvedFunction != null) {
-          return forFunction(resolvedFunction, reference, knownSignature != null ? knownSignature : signature);
-        }
-      }
-      try {
-        return new NumpyDocString(knownSignature != null ? knownSignature : signature, lines);
-      }
-      catch (NotNumpyDocStringException e) {
-        return null;
-      }
-    }
-    return null;
+    return docString != null ? parse(docString) : null;
   }
 
   /**
-   * Returns NumpyDocString object confirming to Numpy-style formatted docstring of specified function.
+   * Creates docstring from already parsed sections.
    *
-   * @param function  Function containing docstring for which Numpy wrapper object is to be obtained.
-   * @param reference An original reference element to specified function.
-   * @return Numpy docstring wrapper object for specified function.
+   * @return Docstring or null if there are no parameters and returns in it.
    */
   @Nullable
-  public static NumpyDocString forFunction(@NotNull PyFunction function, @NotNull PsiElement reference) {
-    return forFunction(function, reference, null);
-  }
-
-  @NotNull
-  private static List<String> splitByLines(@NotNull String text) {
-    List<String> lines = new ArrayList<String>();
-    for (String line : LINE_SEPARATOR.split(text)) {
-      if (!line.isEmpty() && !WHITE_SPACED_LINE.matcher(line).matches()) {
-        lines.add(line);
-      }
-    }
-    return lines;
-  }
-
-  private static void dedent(@NotNull List<String> lines) {
-    String margin = null;
-    for (String line : lines) {
-      Matcher matcher = ANY_INDENT.matcher(line);
-      if (matcher.find() && matcher.groupCount() != 0) {
-        String indent = matcher.group(1);
-        if (margin == null || (margin.startsWith(indent) && margin.length() != indent.length())) {
-          // update margin
-          margin = indent;
-        } else if (!indent.startsWith(margin)) {
-          // lines have no common margin
-          margin = "";
-          break;
-        }
-      }
-    }
-
-    if (margin != null && !margin.isEmpty()) {
-      for (int i = 0; i < lines.size(); i++) {
-        lines.set(i, lines.get(i).substring(margin.length()));
-      }
+  static NumpyDocString fromSections(@Nullable String signature,
+                                     @NotNull List<DocStringParameter> parameters,
+                                     @NotNull List<DocStringParameter> returns) {
+    try {
+      return new NumpyDocString(signature, parameters, returns);
     }
-  }
-
-  private static int indexOfMatch(@NotNull List<String> lines, @NotNull Pattern pattern, int start) {
-    for (int i = start; i < lines.size(); i++) {
-      if (pattern.matcher(lines.get(i)).matches()) {
-        return i;
-      }
+    catch (NotNumpyDocStringException e) {
+      return null;
     }
-    return -1;
   }
 
+  /**
+   * Parses specified docstring text, no PSI is involved here.
+   */
   @NotNull
-  private static <T> List<T> copyOfRange(@NotNull List<T> src, int start, int end) {
-    List<T> dest = new ArrayList<T>();
-    if (start < 0) {
-      start = 0;
+  static ParsedDocString parse(@NotNull String docString) {
+    NumpyDocStringScanner scanner = new NumpyDocStringScanner(docString);
+    String signature = scanner.scanSignature();
+    String redirect = scanner.findRedirect();
+    scanner.indexSections();
+    try {
+      return new ParsedDocString(signature, redirect, new NumpyDocString(signature, scanner));
     }
-    if (end < 0) {
-      end = src.size();
+    catch (NotNumpyDocStringException e) {
+      return new ParsedDocString(signature, redirect, null);
     }
-    for (int i = start; i < end; i++) {
-      dest.add(src.get(i));
-    }
-    return dest;
   }
 
   @Nullable
-  private static String findRedirect(@NotNull List<String> lines) {
-    for (String line : lines) {
-      Matcher matcher = REDIRECT.matcher(line);
-      if (matcher.matches() && matcher.groupCount() > 0) {
-        return matcher.group(1);
+  private static NumpyDocString forFunction(@NotNull PyFunction function,
+                                            @NotNull PsiElement reference,
+                                            @Nullable TypeEvalContext context,
+                                            @Nullable String knownSignature,
+                                            int redirectCount) {
+    if (context != null && !context.maySwitchToAST(function) &&
+        function.getStub() != null && !NumpyDocStringIndex.isAvailable(function)) {
+      // Docstring cannot be obtained without loading AST
+      return null;
+    }
+    ParsedDocString parsedDocString = getParsedDocString(function);
+    if (parsedDocString != null) {
+      String signature = knownSignature != null ? knownSignature : parsedDocString.mySignature;
+      if (parsedDocString.myRedirect != null) {
+        PyFunction resolvedFunction = resolveRedirectToFunctionCached(parsedDocString.myRedirect, reference);
+        if (resolvedFunction != null && redirectCount < MAX_REDIRECTS) {
+          return forFunction(resolvedFunction, reference, context, signature, redirectCount + 1);
+        }
+      }
+      if (parsedDocString.myDocString != null) {
+        return parsedDocString.myDocString.withSignature(signature);
       }
     }
     return null;
   }
 
-  private void parseSections(@NotNull List<String> lines) {
-    int current = indexOfMatch(lines, SECTION_HEADER, 1);
-    while (current != -1) {
-      int next = indexOfMatch(lines, SECTION_HEADER, current + 1);
-      String sectionName = lines.get(current - 1);
-      if ("Parameters".equalsIgnoreCase(sectionName)) {
-        parseParametersSection(copyOfRange(lines, current + 1, next - 1), myParameters);
-      } else if ("Returns".equalsIgnoreCase(sectionName)) {
-        parseParametersSection(copyOfRange(lines, current + 1, next - 1), myReturns);
-      }
-      current = next;
-    }
+  /**
+   * Returns NumpyDocString object confirming to Numpy-style formatted docstring of specified function.
+   *
+   * @param function  Function containing docstring for which Numpy wrapper object is to be obtained.
+   * @param reference An original reference element to specified function.
+   * @return Numpy docstring wrapper object for specified function.
+   */
+  @Nullable
+  public static NumpyDocString forFunction(@NotNull PyFunction function, @NotNull PsiElement reference) {
+    return forFunction(function, reference, null, null, 0);
   }
 
-  private static void parseParametersSection(@NotNull List<String> lines, List<DocStringParameter> parameters) {
-    DocStringParameterBuilder builder = null;
-    for (String line : lines) {
-      if (!HAS_INDENT.matcher(line).find()) {
-        if (builder != null) {
-          parameters.add(builder.build());
-        }
-        builder = new DocStringParameterBuilder();
-        Matcher parameterWithTypeMatcher = PARAMETER_WITH_TYPE.matcher(line);
-        if (parameterWithTypeMatcher.matches()) {
-          builder.setName(parameterWithTypeMatcher.group(1));
-          builder.setType(parameterWithTypeMatcher.group(2));
-        } else {
-          Matcher parameterWithoutTypeMatcher = PARAMETER_WITHOUT_TYPE.matcher(line);
-          if (parameterWithoutTypeMatcher.matches()) {
-            builder.setName(parameterWithoutTypeMatcher.group(1));
-            builder.setType("object");
-          }
-        }
-      } else {
-        if (builder != null) {
-          builder.appendDescription(line.trim());
-        }
+  /**
+   * Same as {@link #forFunction(PyFunction, PsiElement)}, but never loads AST of files which specified
+   * context doesn't allow to switch to AST: docstrings of such functions are taken only from
+   * {@link NumpyDocStringIndex}.
+   */
+  @Nullable
+  public static NumpyDocString forFunction(@NotNull PyFunction function,
+                                           @NotNull PsiElement reference,
+                                           @NotNull TypeEvalContext context) {
+    return forFunction(function, reference, context, null, 0);
+  }
+
+  /**
+   * Returns function which docstring is used for specified function, i.e. the target of its redirects or the
+   * function itself. Caches of docstrings taken from another function should depend on the file of that one.
+   *
+   * @param reference An original reference element to specified function.
+   */
+  @NotNull
+  public static PyFunction getDocStringOwner(@NotNull PyFunction function, @NotNull PsiElement reference) {
+    ParsedDocString parsedDocString = getParsedDocString(function);
+    for (int i = 0; i < MAX_REDIRECTS && parsedDocString != null && parsedDocString.myRedirect != null; i++) {
+      PyFunction resolvedFunction = resolveRedirectToFunctionCached(parsedDocString.myRedirect, reference);
+      if (resolvedFunction == null || resolvedFunction == function) {
+        break;
       }
+      function = resolvedFunction;
+      parsedDocString = getParsedDocString(function);
     }
-    if (builder != null) {
-      parameters.add(builder.build());
-    }
+    return function;
   }
 
   @NotNull
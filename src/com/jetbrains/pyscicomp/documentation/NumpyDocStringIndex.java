@@ -0,0 +1,304 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jetbrains.pyscicomp.documentation;
+
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.util.Comparing;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiNamedElement;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.util.indexing.*;
+import com.intellij.util.io.DataExternalizer;
+import com.intellij.util.io.EnumeratorStringDescriptor;
+import com.intellij.util.io.IOUtil;
+import com.intellij.util.io.KeyDescriptor;
+import com.jetbrains.python.PythonFileType;
+import com.jetbrains.python.psi.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Index of Numpy-style docstrings of functions. Docstrings are parsed at indexing time, so they can be
+ * obtained for functions of library files without loading and parsing their AST.
+ * <p/>
+ * Functions are keyed by their names qualified inside the file, e.g. "ndarray.sum", lookups are always
+ * restricted to the file of function. Every definition is indexed: repeated definitions of the same name,
+ * e.g. conditional ones, are told apart by their ordinal among namesakes, e.g. "ndarray.sum#1" is the second
+ * definition of sum in ndarray.
+ */
+public class NumpyDocStringIndex extends FileBasedIndexExtension<String, NumpyDocString.ParsedDocString> {
+
+  static final ID<String, NumpyDocString.ParsedDocString> NAME = ID.create("Pyscicomp.NumpyDocString");
+
+  private static final int VERSION = 2;
+  private static final char ORDINAL_SEPARATOR = '#';
+
+  private final DataIndexer<String, NumpyDocString.ParsedDocString, FileContent> myIndexer =
+    new DataIndexer<String, NumpyDocString.ParsedDocString, FileContent>() {
+      @NotNull
+      @Override
+      public Map<String, NumpyDocString.ParsedDocString> map(FileContent inputData) {
+        Map<String, NumpyDocString.ParsedDocString> result = new HashMap<String, NumpyDocString.ParsedDocString>();
+        PsiFile file = inputData.getPsiFile();
+        if (file instanceof PyFile) {
+          indexDefinitions(file, null, new HashMap<String, Integer>(), result);
+        }
+        return result;
+      }
+    };
+
+  private final DataExternalizer<NumpyDocString.ParsedDocString> myExternalizer =
+    new DataExternalizer<NumpyDocString.ParsedDocString>() {
+      @Override
+      public void save(DataOutput out, NumpyDocString.ParsedDocString value) throws IOException {
+        writeNullableString(out, value.getSignature());
+        writeNullableString(out, value.getRedirect());
+        NumpyDocString docString = value.getDocString();
+        out.writeBoolean(docString != null);
+        if (docString != null) {
+          writeParameters(out, docString.getParameters());
+          writeParameters(out, docString.getReturns());
+        }
+      }
+
+      @Override
+      public NumpyDocString.ParsedDocString read(DataInput in) throws IOException {
+        String signature = readNullableString(in);
+        String redirect = readNullableString(in);
+        NumpyDocString docString = null;
+        if (in.readBoolean()) {
+          List<DocStringParameter> parameters = readParameters(in);
+          List<DocStringParameter> returns = readParameters(in);
+          docString = NumpyDocString.fromSections(signature, parameters, returns);
+        }
+        return new NumpyDocString.ParsedDocString(signature, redirect, docString);
+      }
+    };
+
+  private final FileBasedIndex.InputFilter myInputFilter = new FileBasedIndex.InputFilter() {
+    @Override
+    public boolean acceptInput(VirtualFile file) {
+      return file.getFileType() == PythonFileType.INSTANCE;
+    }
+  };
+
+  @Override
+  public ID<String, NumpyDocString.ParsedDocString> getName() {
+    return NAME;
+  }
+
+  @Override
+  public DataIndexer<String, NumpyDocString.ParsedDocString, FileContent> getIndexer() {
+    return myIndexer;
+  }
+
+  @Override
+  public KeyDescriptor<String> getKeyDescriptor() {
+    return new EnumeratorStringDescriptor();
+  }
+
+  @Override
+  public DataExternalizer<NumpyDocString.ParsedDocString> getValueExternalizer() {
+    return myExternalizer;
+  }
+
+  @Override
+  public FileBasedIndex.InputFilter getInputFilter() {
+    return myInputFilter;
+  }
+
+  @Override
+  public boolean dependsOnFileContent() {
+    return true;
+  }
+
+  @Override
+  public int getVersion() {
+    return VERSION;
+  }
+
+  /**
+   * Checks whether docstring of specified function can be obtained from the index at the moment, i.e. the
+   * function is located in a physical file and indices aren't being updated.
+   */
+  static boolean isAvailable(@NotNull PyFunction function) {
+    PsiFile file = function.getContainingFile();
+    return file != null && file.getVirtualFile() != null && !DumbService.isDumb(function.getProject());
+  }
+
+  /**
+   * Returns indexed docstring of specified function, the index must be available for it.
+   *
+   * @return Parsed docstring or null if the function has neither Numpy-style docstring nor redirect.
+   */
+  @Nullable
+  static NumpyDocString.ParsedDocString getParsedDocString(@NotNull PyFunction function) {
+    String key = getKey(function);
+    if (key == null) {
+      // Function is nested in a way which ordinals can't be computed for without AST
+      return NumpyDocString.parseDocString(function);
+    }
+    List<NumpyDocString.ParsedDocString> values =
+      FileBasedIndex.getInstance().getValues(NAME, key, GlobalSearchScope.fileScope(function.getContainingFile()));
+    return values.isEmpty() ? null : values.get(0);
+  }
+
+  /**
+   * Indexes docstrings of functions defined inside specified element in order of definition.
+   *
+   * @param containerKey Key of the innermost class or function containing the element, null for file.
+   * @param ordinals     Number of definitions seen so far by kind and key without ordinal.
+   */
+  private static void indexDefinitions(@NotNull PsiElement element,
+                                       @Nullable String containerKey,
+                                       @NotNull Map<String, Integer> ordinals,
+                                       @NotNull Map<String, NumpyDocString.ParsedDocString> result) {
+    for (PsiElement child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+      if (child instanceof PyClass || child instanceof PyFunction) {
+        String name = ((PsiNamedElement) child).getName();
+        if (name == null) {
+          continue;
+        }
+        String key = containerKey != null ? containerKey + "." + name : name;
+        String kindKey = (child instanceof PyClass ? "class " : "def ") + key;
+        Integer ordinal = ordinals.get(kindKey);
+        ordinals.put(kindKey, ordinal != null ? ordinal + 1 : 1);
+        key = withOrdinal(key, ordinal != null ? ordinal : 0);
+        if (child instanceof PyFunction) {
+          NumpyDocString.ParsedDocString parsedDocString = NumpyDocString.parseDocString((PyFunction) child);
+          if (parsedDocString != null && parsedDocString.isMeaningful()) {
+            result.put(key, parsedDocString);
+          }
+        }
+        indexDefinitions(child, key, ordinals, result);
+      } else {
+        indexDefinitions(child, containerKey, ordinals, result);
+      }
+    }
+  }
+
+  /**
+   * Returns key of function in the index computed by stubs, e.g. "ndarray.sum" or "ndarray.sum#1" for the
+   * second definition of sum in ndarray.
+   *
+   * @return Key or null if the function or one of its containers is defined inside a function.
+   */
+  @Nullable
+  private static String getKey(@NotNull PyFunction function) {
+    StringBuilder result = new StringBuilder();
+    for (PsiElement element = function; element != null && !(element instanceof PsiFile); element = element.getParent()) {
+      if (element instanceof PyClass || element instanceof PyFunction) {
+        PsiNamedElement namedElement = (PsiNamedElement) element;
+        String name = namedElement.getName();
+        int ordinal = getOrdinal(namedElement);
+        if (name == null || ordinal < 0) {
+          return null;
+        }
+        if (result.length() > 0) {
+          result.insert(0, '.');
+        }
+        result.insert(0, withOrdinal(name, ordinal));
+      }
+    }
+    return result.toString();
+  }
+
+  /**
+   * Returns number of definitions of the same kind and name preceding specified class or function in its
+   * container, or -1 if the container is a function.
+   */
+  private static int getOrdinal(@NotNull PsiNamedElement element) {
+    PyClass containingClass = PsiTreeUtil.getStubOrPsiParentOfType(element, PyClass.class);
+    PyFunction containingFunction = PsiTreeUtil.getStubOrPsiParentOfType(element, PyFunction.class);
+    if (containingFunction != null && (containingClass == null || PsiTreeUtil.isAncestor(containingClass, containingFunction, true))) {
+      return -1;
+    }
+    // Stubs of definitions nested in statements, e.g. in "if", belong to the class or file, so their order
+    // is the same as in the indexer
+    List<? extends PsiNamedElement> siblings;
+    if (containingClass != null) {
+      if (element instanceof PyClass) {
+        siblings = Arrays.asList(containingClass.getNestedClasses());
+      } else {
+        siblings = Arrays.asList(containingClass.getMethods());
+      }
+    } else {
+      PyFile file = (PyFile) element.getContainingFile();
+      if (element instanceof PyClass) {
+        siblings = file.getTopLevelClasses();
+      } else {
+        siblings = file.getTopLevelFunctions();
+      }
+    }
+    int ordinal = 0;
+    for (PsiNamedElement sibling : siblings) {
+      if (sibling == element) {
+        return ordinal;
+      }
+      if (Comparing.equal(sibling.getName(), element.getName())) {
+        ordinal++;
+      }
+    }
+    return ordinal;
+  }
+
+  @NotNull
+  private static String withOrdinal(@NotNull String name, int ordinal) {
+    return ordinal > 0 ? name + ORDINAL_SEPARATOR + ordinal : name;
+  }
+
+  private static void writeParameters(@NotNull DataOutput out, @NotNull List<DocStringParameter> parameters) throws IOException {
+    out.writeInt(parameters.size());
+    for (DocStringParameter parameter : parameters) {
+      IOUtil.writeUTF(out, parameter.getName());
+      writeNullableString(out, parameter.getType());
+      writeNullableString(out, parameter.getDescription());
+    }
+  }
+
+  @NotNull
+  private static List<DocStringParameter> readParameters(@NotNull DataInput in) throws IOException {
+    int count = in.readInt();
+    List<DocStringParameter> parameters = new ArrayList<DocStringParameter>(count);
+    for (int i = 0; i < count; i++) {
+      String name = IOUtil.readUTF(in);
+      String type = readNullableString(in);
+      String description = readNullableString(in);
+      parameters.add(new DocStringParameter(name, type, description));
+    }
+    return parameters;
+  }
+
+  private static void writeNullableString(@NotNull DataOutput out, @Nullable String value) throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null) {
+      IOUtil.writeUTF(out, value);
+    }
+  }
+
+  @Nullable
+  private static String readNullableString(@NotNull DataInput in) throws IOException {
+    return in.readBoolean() ? IOUtil.readUTF(in) : null;
+  }
+}
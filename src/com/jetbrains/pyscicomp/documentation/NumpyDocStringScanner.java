@@ -0,0 +1,392 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jetbrains.pyscicomp.documentation;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Scanner of Numpy docstrings working directly on the docstring text. Lines are tracked as offset ranges,
+ * dedenting only moves their start offsets, so no per-line strings are created; only names, types and
+ * descriptions of parameters are copied out of the text.
+ * <p/>
+ * Once sections are indexed, the scanner is not modified anymore and can be shared by lazily parsed
+ * docstrings between threads.
+ */
+class NumpyDocStringScanner {
+
+  private static final Pattern SIGNATURE = Pattern.compile("^([\\w., ]+=)?\\s*[\\w\\.]+\\(.*\\)$");
+  private static final String REDIRECT_PREFIX = "Refer to `";
+  private static final String REDIRECT_SUFFIX = "` for full documentation";
+  private static final String TYPE_SEPARATOR = " : ";
+  private static final char NEXT_LINE = 0x85;
+  private static final char LINE_SEPARATOR = 0x2028;
+  private static final char PARAGRAPH_SEPARATOR = 0x2029;
+
+  static final int PARAMETERS = 0;
+  static final int RETURNS = 1;
+
+  private final String myText;
+  private int[] myStarts = new int[32];
+  private int[] myEnds = new int[32];
+  // Lines of the docstring are in range [myFirst, myCount)
+  private int myFirst = 0;
+  private int myCount = 0;
+  // Sections are stored as (kind, first line, end line) triples
+  private int[] mySections = new int[6];
+  private int mySectionCount = 0;
+
+  NumpyDocStringScanner(@NotNull String text) {
+    myText = text;
+  }
+
+  /**
+   * Finds all lines of the docstring except empty or white-spaced ones.
+   */
+  void scanLines() {
+    myFirst = 0;
+    myCount = 0;
+    int length = myText.length();
+    int start = 0;
+    while (start <= length) {
+      int end = start;
+      boolean blank = true;
+      while (end < length) {
+        char c = myText.charAt(end);
+        if (c == '\n' || c == '\r') {
+          break;
+        }
+        if (c != ' ' && c != '\t') {
+          blank = false;
+        }
+        end++;
+      }
+      if (!blank) {
+        addLine(start, end);
+      }
+      start = end + 1;
+    }
+  }
+
+  private void addLine(int start, int end) {
+    if (myCount == myStarts.length) {
+      int[] starts = new int[myCount * 2];
+      int[] ends = new int[myCount * 2];
+      System.arraycopy(myStarts, 0, starts, 0, myCount);
+      System.arraycopy(myEnds, 0, ends, 0, myCount);
+      myStarts = starts;
+      myEnds = ends;
+    }
+    myStarts[myCount] = start;
+    myEnds[myCount] = end;
+    myCount++;
+  }
+
+  int getLineCount() {
+    return myCount - myFirst;
+  }
+
+  /**
+   * Removes common margin of lines.
+   */
+  void dedent() {
+    int marginLine = -1;
+    int marginLength = 0;
+    for (int i = myFirst; i < myCount; i++) {
+      int indent = getIndent(i);
+      if (marginLine == -1 || (indent < marginLength && regionsMatch(marginLine, i, indent))) {
+        // update margin
+        marginLine = i;
+        marginLength = indent;
+      } else if (indent < marginLength || !regionsMatch(marginLine, i, marginLength)) {
+        // lines have no common margin
+        marginLength = 0;
+        break;
+      }
+    }
+
+    if (marginLength > 0) {
+      for (int i = myFirst; i < myCount; i++) {
+        myStarts[i] += marginLength;
+      }
+    }
+  }
+
+  /**
+   * Scans lines and extracts the signature of function if the docstring starts with it.
+   */
+  @Nullable
+  String scanSignature() {
+    scanLines();
+    dedent();
+    if (myFirst < myCount && SIGNATURE.matcher(CharBuffer.wrap(myText, myStarts[myFirst], myEnds[myFirst])).matches()) {
+      String signature = getLine(myFirst);
+      myFirst++;
+      dedent();
+      return signature;
+    }
+    return null;
+  }
+
+  /**
+   * Returns a fully qualified name of function which documentation is referred to, e.g.
+   * "Refer to `numpy.sum` for full documentation.".
+   */
+  @Nullable
+  String findRedirect() {
+    int minLength = REDIRECT_PREFIX.length() + REDIRECT_SUFFIX.length() + 1;
+    for (int i = myFirst; i < myCount; i++) {
+      int start = myStarts[i];
+      int end = myEnds[i];
+      if (end - start >= minLength &&
+          myText.startsWith(REDIRECT_PREFIX, start) &&
+          myText.startsWith(REDIRECT_SUFFIX, end - 1 - REDIRECT_SUFFIX.length()) &&
+          !containsRegexLineTerminator(start, end)) {
+        return myText.substring(start + REDIRECT_PREFIX.length(), end - 1 - REDIRECT_SUFFIX.length());
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Finds boundaries of "Parameters" and "Returns" sections of the docstring. Sections themselves are
+   * parsed only on request.
+   */
+  void indexSections() {
+    mySectionCount = 0;
+    int current = findSectionHeader(myFirst + 1);
+    while (current != -1) {
+      int next = findSectionHeader(current + 1);
+      int sectionEnd = next != -1 ? next - 1 : myCount;
+      if (lineEqualsIgnoreCase(current - 1, "Parameters")) {
+        addSection(PARAMETERS, current + 1, sectionEnd);
+      } else if (lineEqualsIgnoreCase(current - 1, "Returns")) {
+        addSection(RETURNS, current + 1, sectionEnd);
+      }
+      current = next;
+    }
+  }
+
+  private void addSection(int kind, int from, int to) {
+    if (3 * mySectionCount == mySections.length) {
+      int[] sections = new int[mySections.length * 2];
+      System.arraycopy(mySections, 0, sections, 0, mySections.length);
+      mySections = sections;
+    }
+    mySections[3 * mySectionCount] = kind;
+    mySections[3 * mySectionCount + 1] = from;
+    mySections[3 * mySectionCount + 2] = to;
+    mySectionCount++;
+  }
+
+  /**
+   * Checks whether sections of specified kind contain at least one parameter without parsing them.
+   */
+  boolean hasParameters(int kind) {
+    for (int section = 0; section < mySectionCount; section++) {
+      if (mySections[3 * section] == kind) {
+        for (int i = mySections[3 * section + 1]; i < mySections[3 * section + 2]; i++) {
+          if (getIndent(i) == 0) {
+            return true;
+          }
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Parses all parameters of sections of specified kind. Descriptions of parameters are built when they
+   * are requested for the first time.
+   */
+  @NotNull
+  List<DocStringParameter> parseParameters(int kind) {
+    List<DocStringParameter> parameters = new ArrayList<DocStringParameter>();
+    for (int section = 0; section < mySectionCount; section++) {
+      if (mySections[3 * section] == kind) {
+        int to = mySections[3 * section + 2];
+        for (int i = mySections[3 * section + 1]; i < to; i++) {
+          if (getIndent(i) == 0) {
+            parameters.add(createParameter(i, to));
+          }
+        }
+      }
+    }
+    return parameters;
+  }
+
+  /**
+   * Finds the first parameter with specified name in sections of specified kind. Names are compared in
+   * place, so only the found parameter is copied out of the text.
+   */
+  @Nullable
+  DocStringParameter findParameter(int kind, @NotNull String name) {
+    for (int section = 0; section < mySectionCount; section++) {
+      if (mySections[3 * section] == kind) {
+        int to = mySections[3 * section + 2];
+        for (int i = mySections[3 * section + 1]; i < to; i++) {
+          if (getIndent(i) == 0 && nameEquals(i, name)) {
+            return createParameter(i, to);
+          }
+        }
+      }
+    }
+    return null;
+  }
+
+  private boolean nameEquals(int line, @NotNull String name) {
+    int start = myStarts[line];
+    int end = getNameEnd(line);
+    return end - start == name.length() && myText.startsWith(name, start);
+  }
+
+  /**
+   * Returns end offset of the name of parameter described at specified line, parameters without
+   * recognizable name have empty names.
+   */
+  private int getNameEnd(int line) {
+    int separator = findTypeSeparator(line);
+    if (separator != -1) {
+      return separator;
+    }
+    return isSimpleName(line) ? myEnds[line] : myStarts[line];
+  }
+
+  @NotNull
+  private DocStringParameter createParameter(int line, int sectionEnd) {
+    int start = myStarts[line];
+    int end = myEnds[line];
+    String name = "";
+    String type = "";
+    int separator = findTypeSeparator(line);
+    if (separator != -1) {
+      name = myText.substring(start, separator);
+      type = myText.substring(separator + TYPE_SEPARATOR.length(), end);
+    } else if (isSimpleName(line)) {
+      name = myText.substring(start, end);
+      type = "object";
+    }
+    int descriptionEnd = line + 1;
+    while (descriptionEnd < sectionEnd && getIndent(descriptionEnd) != 0) {
+      descriptionEnd++;
+    }
+    return new DocStringParameter(name, type, this, line + 1, descriptionEnd);
+  }
+
+  /**
+   * Joins trimmed lines in range [from, to) each preceded by a space.
+   */
+  @NotNull
+  String getDescription(int from, int to) {
+    StringBuilder description = new StringBuilder();
+    for (int i = from; i < to; i++) {
+      int start = myStarts[i];
+      int end = myEnds[i];
+      while (start < end && myText.charAt(start) <= ' ') {
+        start++;
+      }
+      while (end > start && myText.charAt(end - 1) <= ' ') {
+        end--;
+      }
+      description.append(' ');
+      description.append(myText, start, end);
+    }
+    return description.toString();
+  }
+
+  /**
+   * Returns offset of the last " : " separating non-empty name and type of parameter or -1.
+   */
+  private int findTypeSeparator(int line) {
+    int start = myStarts[line];
+    int end = myEnds[line];
+    if (containsRegexLineTerminator(start, end)) {
+      return -1;
+    }
+    int separator = myText.lastIndexOf(TYPE_SEPARATOR, end - TYPE_SEPARATOR.length() - 1);
+    return separator > start ? separator : -1;
+  }
+
+  private boolean isSimpleName(int line) {
+    for (int i = myStarts[line]; i < myEnds[line]; i++) {
+      char c = myText.charAt(i);
+      if (c == ' ' || c == ':' || c == ',') {
+        return false;
+      }
+    }
+    return myStarts[line] < myEnds[line];
+  }
+
+  private int findSectionHeader(int from) {
+    for (int i = from; i < myCount; i++) {
+      if (isSectionHeader(i)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private boolean isSectionHeader(int line) {
+    for (int i = myStarts[line]; i < myEnds[line]; i++) {
+      char c = myText.charAt(i);
+      if (c != '-' && c != '=') {
+        return false;
+      }
+    }
+    return myStarts[line] < myEnds[line];
+  }
+
+  private boolean lineEqualsIgnoreCase(int line, @NotNull String value) {
+    return myEnds[line] - myStarts[line] == value.length() &&
+           myText.regionMatches(true, myStarts[line], value, 0, value.length());
+  }
+
+  private int getIndent(int line) {
+    int i = myStarts[line];
+    int end = myEnds[line];
+    while (i < end && (myText.charAt(i) == ' ' || myText.charAt(i) == '\t')) {
+      i++;
+    }
+    return i - myStarts[line];
+  }
+
+  private boolean regionsMatch(int line1, int line2, int length) {
+    return myText.regionMatches(myStarts[line1], myText, myStarts[line2], length);
+  }
+
+  /**
+   * Checks for characters other than '\n' and '\r' which are not matched by '.' in regular expressions.
+   */
+  private boolean containsRegexLineTerminator(int start, int end) {
+    for (int i = start; i < end; i++) {
+      char c = myText.charAt(i);
+      if (c == NEXT_LINE || c == LINE_SEPARATOR || c == PARAGRAPH_SEPARATOR) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @NotNull
+  private String getLine(int line) {
+    return myText.substring(myStarts[line], myEnds[line]);
+  }
+}
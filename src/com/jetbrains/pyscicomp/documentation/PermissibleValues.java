@@ -0,0 +1,102 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jetbrains.pyscicomp.documentation;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * Immutable permissible values of a parameter in order of their declaration together with a set of their
+ * case-folded forms, so that a value passed as an argument is matched ignoring case by a single hash
+ * lookup.
+ */
+public class PermissibleValues {
+
+  public static final PermissibleValues EMPTY = new PermissibleValues(Collections.<String>emptyList(),
+                                                                      Collections.<String>emptySet());
+
+  private final List<String> myValues;
+  private final Set<String> myFoldedValues;
+
+  private PermissibleValues(@NotNull List<String> values, @NotNull Set<String> foldedValues) {
+    myValues = values;
+    myFoldedValues = foldedValues;
+  }
+
+  @NotNull
+  public static PermissibleValues create(@NotNull Collection<String> values) {
+    if (values.isEmpty()) {
+      return EMPTY;
+    }
+    List<String> distinctValues = new ArrayList<String>(new LinkedHashSet<String>(values));
+    Set<String> foldedValues = new HashSet<String>();
+    for (String value : distinctValues) {
+      foldedValues.add(foldCase(value));
+    }
+    return new PermissibleValues(Collections.unmodifiableList(distinctValues), foldedValues);
+  }
+
+  /**
+   * Returns permissible values listed in a type of Numpy docstring parameter, e.g. {'left', 'right'}.
+   */
+  @NotNull
+  public static PermissibleValues fromNumpyDocType(@Nullable String type) {
+    return type != null ? create(NumpyDocString.extractPermissibleArgumentsFromNumpyDocType(type)) : EMPTY;
+  }
+
+  @NotNull
+  public List<String> getValues() {
+    return myValues;
+  }
+
+  public boolean isEmpty() {
+    return myValues.isEmpty();
+  }
+
+  /**
+   * Checks whether specified value equals to one of permissible values ignoring case, same as
+   * {@link String#equalsIgnoreCase(String)}.
+   */
+  public boolean containsIgnoreCase(@NotNull String value) {
+    return myFoldedValues.contains(foldCase(value));
+  }
+
+  /**
+   * Folds case of each character the same way as {@link String#CASE_INSENSITIVE_ORDER} compares them.
+   */
+  @NotNull
+  private static String foldCase(@NotNull String value) {
+    char[] chars = null;
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      char folded = Character.toLowerCase(Character.toUpperCase(c));
+      if (folded != c) {
+        if (chars == null) {
+          chars = value.toCharArray();
+        }
+        chars[i] = folded;
+      }
+    }
+    return chars != null ? new String(chars) : value;
+  }
+
+  @Override
+  public String toString() {
+    return myValues.toString();
+  }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jetbrains.pyscicomp.util;
+
+import com.intellij.util.containers.WeakInterner;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Thread-safe pool of strings shared by type information, e.g. type names and permissible values repeated in
+ * thousands of functions. Unlike {@link String#intern()} the pool lives in the heap, and strings are held
+ * weakly, so ones no longer used by any function are collected.
+ */
+public class Interner {
+
+  private static final WeakInterner<String> STRINGS = new WeakInterner<String>();
+
+  // Static usage only
+  private Interner() {
+  }
+
+  @Nullable
+  public static String intern(@Nullable String value) {
+    if (value == null) {
+      return null;
+    }
+    return STRINGS.intern(value);
+  }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jetbrains.pyscicomp.util;
+
+import com.intellij.util.Function;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable lookup of parameters by name. Parameters of functions are sometimes named with "p_" prefix,
+ * while being documented without it, so prefixed names also match parameters named without the prefix
+ * unless there is a parameter with exactly such name. If several parameters have the same name, the first
+ * one is found.
+ */
+public class ParameterIndex<T> {
+
+  private static final String PREFIX = "p_";
+
+  private final Map<String, T> myParameters = new HashMap<String, T>();
+
+  public ParameterIndex(@NotNull List<T> parameters, @NotNull Function<T, String> getName) {
+    for (T parameter : parameters) {
+      String name = getName.fun(parameter);
+      if (name != null && !myParameters.containsKey(name)) {
+        myParameters.put(name, parameter);
+      }
+    }
+    for (T parameter : parameters) {
+      String name = getName.fun(parameter);
+      if (name != null && !myParameters.containsKey(PREFIX + name)) {
+        myParameters.put(PREFIX + name, parameter);
+      }
+    }
+  }
+
+  @Nullable
+  public T get(@NotNull String name) {
+    return myParameters.get(name);
+  }
+
+  /**
+   * Returns name without "p_" prefix or null if specified name has no such prefix.
+   */
+  @Nullable
+  public static String removePrefix(@NotNull String name) {
+    return name.startsWith(PREFIX) ? name.substring(PREFIX.length()) : null;
+  }
+}
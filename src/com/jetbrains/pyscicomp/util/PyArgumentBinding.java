@@ -0,0 +1,190 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jetbrains.pyscicomp.util;
+
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiReference;
+import com.jetbrains.python.PyNames;
+import com.jetbrains.python.psi.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Binding of arguments of a call to parameters of the called function, built in a single pass over the
+ * parameter list and the argument list. Implicit first parameter of methods, keyword-only parameters and
+ * packed positional arguments are taken into account; arguments which positions are unknown, e.g. ones
+ * after *args of the call, are left unbound.
+ * <p/>
+ * Parameters named with "p_" prefix are also bound by names without the prefix, the same way as
+ * {@link ParameterIndex} matches them.
+ */
+public class PyArgumentBinding {
+
+  private final Set<String> myParameters = new HashSet<String>();
+  private final Map<String, PyExpression> myParametersToArguments = new HashMap<String, PyExpression>();
+  private final Map<PyExpression, String> myArgumentsToParameters = new HashMap<PyExpression, String>();
+
+  private PyArgumentBinding() {
+  }
+
+  @NotNull
+  public static PyArgumentBinding bind(@NotNull PyCallExpression callExpression, @NotNull PyFunction function) {
+    PyArgumentBinding binding = new PyArgumentBinding();
+    // Names of parameters in order of positions, null for positions which aren't bound by name
+    List<String> positionalParameters = new ArrayList<String>();
+    Set<String> keywordParameters = new LinkedHashSet<String>();
+    boolean keywordOnly = false;
+    for (PyParameter parameter : function.getParameterList().getParameters()) {
+      PyNamedParameter namedParameter = parameter.getAsNamed();
+      if (namedParameter == null) {
+        if (parameter instanceof PyTupleParameter) {
+          // Unpacked tuple takes a position, but cannot be passed by keyword
+          if (!keywordOnly) {
+            positionalParameters.add(null);
+          }
+        } else {
+          // A bare "*" separating keyword-only parameters
+          keywordOnly = true;
+        }
+      } else if (namedParameter.isPositionalContainer()) {
+        keywordOnly = true;
+      } else if (!namedParameter.isKeywordContainer()) {
+        String name = namedParameter.getName();
+        if (name != null) {
+          if (!keywordOnly) {
+            positionalParameters.add(name);
+          }
+          keywordParameters.add(name);
+        }
+      }
+    }
+    if (!positionalParameters.isEmpty() && hasImplicitFirstParameter(callExpression, function)) {
+      positionalParameters.remove(0);
+    }
+
+    int position = 0;
+    boolean positionsKnown = true;
+    for (PyExpression argument : callExpression.getArguments()) {
+      if (argument instanceof PyKeywordArgument) {
+        String keyword = ((PyKeywordArgument) argument).getKeyword();
+        if (keyword != null && keywordParameters.contains(keyword)) {
+          binding.add(keyword, ((PyKeywordArgument) argument).getValueExpression(), argument);
+        }
+      } else if (argument instanceof PyStarArgument) {
+        if (!((PyStarArgument) argument).isKeyword()) {
+          positionsKnown = false;
+        }
+      } else if (positionsKnown && position < positionalParameters.size()) {
+        String name = positionalParameters.get(position++);
+        if (name != null) {
+          binding.add(name, argument, argument);
+        }
+      }
+    }
+    binding.myParameters.addAll(keywordParameters);
+    for (String name : keywordParameters) {
+      String unprefixedName = ParameterIndex.removePrefix(name);
+      if (unprefixedName != null && !keywordParameters.contains(unprefixedName)) {
+        binding.myParameters.add(unprefixedName);
+        PyExpression value = binding.myParametersToArguments.get(name);
+        if (value != null) {
+          binding.myParametersToArguments.put(unprefixedName, value);
+        }
+      }
+    }
+    return binding;
+  }
+
+  private void add(@NotNull String parameterName, @Nullable PyExpression value, @NotNull PyExpression argument) {
+    if (!myParametersToArguments.containsKey(parameterName)) {
+      if (value != null) {
+        myParametersToArguments.put(parameterName, value);
+      }
+      myArgumentsToParameters.put(argument, parameterName);
+    }
+  }
+
+  /**
+   * Checks whether the first parameter of function is passed implicitly, i.e. it is "self" of a method
+   * called through an instance or of a constructor, or "cls" of a class method.
+   */
+  private static boolean hasImplicitFirstParameter(@NotNull PyCallExpression callExpression, @NotNull PyFunction function) {
+    if (function.getContainingClass() == null) {
+      return false;
+    }
+    PyDecoratorList decorators = function.getDecoratorList();
+    if (decorators != null) {
+      if (decorators.findDecorator(PyNames.STATICMETHOD) != null) {
+        return false;
+      }
+      if (decorators.findDecorator(PyNames.CLASSMETHOD) != null) {
+        return true;
+      }
+    }
+    PyExpression callee = callExpression.getCallee();
+    if (callee instanceof PyReferenceExpression) {
+      PyReferenceExpression reference = (PyReferenceExpression) callee;
+      if (PyNames.INIT.equals(function.getName()) && !PyNames.INIT.equals(reference.getReferencedName())) {
+        // Instantiation of class, e.g. Outer.Inner(...)
+        return true;
+      }
+      // Methods called through class, e.g. Class.method(self, ...), are unbound
+      return !isClassReference(reference.getQualifier());
+    }
+    return true;
+  }
+
+  private static boolean isClassReference(@Nullable PyExpression expression) {
+    if (expression instanceof PyReferenceExpression) {
+      PsiReference reference = expression.getReference();
+      PsiElement resolved = reference != null ? reference.resolve() : null;
+      return resolved instanceof PyClass;
+    }
+    return false;
+  }
+
+  /**
+   * Checks whether the function has a parameter with specified name which can be passed by keyword.
+   */
+  public boolean hasParameter(@NotNull String parameterName) {
+    return myParameters.contains(parameterName);
+  }
+
+  /**
+   * Returns value passed for parameter with specified name or null if the parameter isn't passed or its
+   * position is unknown.
+   */
+  @Nullable
+  public PyExpression getArgument(@NotNull String parameterName) {
+    return myParametersToArguments.get(parameterName);
+  }
+
+  /**
+   * Returns name of parameter to which specified argument of the call is bound.
+   */
+  @Nullable
+  public String getParameterName(@NotNull PyExpression argument) {
+    return myArgumentsToParameters.get(argument);
+  }
+}
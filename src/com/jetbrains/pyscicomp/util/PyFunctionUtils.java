@@ -15,24 +15,48 @@
  */
 package com.jetbrains.pyscicomp.util;
 
+import com.intellij.openapi.util.Key;
 import com.intellij.psi.PsiElement;
+import com.intellij.psi.util.CachedValue;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import com.intellij.psi.util.PsiModificationTracker;
 import com.jetbrains.python.psi.*;
 import com.jetbrains.python.psi.resolve.PyResolveContext;
+import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 public class PyFunctionUtils {
 
+  private static final Key<CachedValue<PyFunction>> CALLEE_KEY = Key.create("PyFunctionUtils.CALLEE");
+
   // Static usage only
   private PyFunctionUtils() {
   }
 
+  /**
+   * Returns function called by specified expression. The result is cached until any PSI modification, so
+   * completion, inspections and other consumers within a single highlighting pass share the resolution.
+   */
   @Nullable
-  public static PyFunction getCalleeFunction(@Nullable PyCallExpression callExpression) {
+  public static PyFunction getCalleeFunction(@Nullable final PyCallExpression callExpression) {
     if (callExpression != null) {
-      Callable calleeFunction = callExpression.resolveCalleeFunction(PyResolveContext.defaultContext());
-      if (calleeFunction instanceof PyFunction) {
-        return (PyFunction) calleeFunction;
-      }
+      CachedValuesManager manager = CachedValuesManager.getManager(callExpression.getProject());
+      return manager.getCachedValue(callExpression, CALLEE_KEY, new CachedValueProvider<PyFunction>() {
+        @Override
+        public Result<PyFunction> compute() {
+          return Result.create(resolveCalleeFunction(callExpression), PsiModificationTracker.MODIFICATION_COUNT);
+        }
+      }, false);
+    }
+    return null;
+  }
+
+  @Nullable
+  private static PyFunction resolveCalleeFunction(@NotNull PyCallExpression callExpression) {
+    Callable calleeFunction = callExpression.resolveCalleeFunction(PyResolveContext.defaultContext());
+    if (calleeFunction instanceof PyFunction) {
+      return (PyFunction) calleeFunction;
     }
     return null;
   }
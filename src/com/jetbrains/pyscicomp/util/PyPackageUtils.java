@@ -0,0 +1,131 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jetbrains.pyscicomp.util;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.OrderEnumerator;
+import com.intellij.openapi.roots.ProjectRootManager;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.vfs.VfsUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiDirectory;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.util.CachedValue;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import com.jetbrains.python.PyNames;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class PyPackageUtils {
+
+  private static final Key<CachedValue<String>> VERSION_KEY = Key.create("PyPackageUtils.VERSION");
+  private static final String VERSION_FILE = "version.py";
+  private static final Pattern VERSION_PATTERN = Pattern.compile("^version\\s*=\\s*['\"]([^'\"]+)['\"]", Pattern.MULTILINE);
+  private static final Pattern UNSAFE_VERSION_CHARACTERS = Pattern.compile("[^\\w.]");
+
+  // Static usage only
+  private PyPackageUtils() {
+  }
+
+  /**
+   * Returns the outermost package directory containing specified file, e.g. "numpy" for numpy/core/numeric.py.
+   */
+  @Nullable
+  public static PsiDirectory getTopLevelPackage(@NotNull PsiFile file) {
+    PsiDirectory result = null;
+    PsiDirectory directory = file.getContainingDirectory();
+    while (directory != null && directory.findFile(PyNames.INIT_DOT_PY) != null) {
+      result = directory;
+      directory = directory.getParentDirectory();
+    }
+    return result;
+  }
+
+  /**
+   * Returns version of library specified by its top-level package directory as declared in version.py of
+   * the package, like numpy and scipy do. Skeletons of binary modules don't contain version.py, so version
+   * of a skeleton package is taken from the package of the same name in library roots. The result is cached
+   * until project roots change, e.g. when the library is upgraded.
+   *
+   * @return Version normalized by {@link #normalizeVersion(String)} or null if the package doesn't declare it.
+   */
+  @Nullable
+  public static String getVersion(@NotNull final PsiDirectory packageDirectory) {
+    CachedValuesManager manager = CachedValuesManager.getManager(packageDirectory.getProject());
+    String version = manager.getCachedValue(packageDirectory, VERSION_KEY, new CachedValueProvider<String>() {
+      @Override
+      public Result<String> compute() {
+        VirtualFile directory = packageDirectory.getVirtualFile();
+        String version = readVersion(directory);
+        if (version == null) {
+          VirtualFile libraryDirectory = findLibraryPackage(packageDirectory.getProject(), directory);
+          version = libraryDirectory != null ? readVersion(libraryDirectory) : null;
+        }
+        if (version != null) {
+          version = normalizeVersion(version);
+        }
+        // Absence of version is cached as well
+        return Result.create(version != null ? version : "", ProjectRootManager.getInstance(packageDirectory.getProject()));
+      }
+    }, false);
+    return version.length() > 0 ? version : null;
+  }
+
+  /**
+   * Replaces characters other than letters, digits, '_' and '.' in specified version with '_', so that the
+   * version can be used as a part of file name.
+   */
+  @NotNull
+  public static String normalizeVersion(@NotNull String version) {
+    return UNSAFE_VERSION_CHARACTERS.matcher(version).replaceAll("_");
+  }
+
+  /**
+   * Finds package with the same name as specified one in roots of libraries and SDKs of the project.
+   */
+  @Nullable
+  private static VirtualFile findLibraryPackage(@NotNull Project project, @NotNull VirtualFile packageDirectory) {
+    for (VirtualFile root : OrderEnumerator.orderEntries(project).getAllLibrariesAndSdkClassesRoots()) {
+      VirtualFile directory = root.findChild(packageDirectory.getName());
+      if (directory != null && directory.isDirectory() && !directory.equals(packageDirectory)) {
+        return directory;
+      }
+    }
+    return null;
+  }
+
+  @Nullable
+  private static String readVersion(@NotNull VirtualFile directory) {
+    VirtualFile versionFile = directory.findChild(VERSION_FILE);
+    if (versionFile != null) {
+      try {
+        Matcher matcher = VERSION_PATTERN.matcher(VfsUtil.loadText(versionFile));
+        if (matcher.find()) {
+          return matcher.group(1);
+        }
+      }
+      catch (IOException e) {
+        return null;
+      }
+    }
+    return null;
+  }
+}
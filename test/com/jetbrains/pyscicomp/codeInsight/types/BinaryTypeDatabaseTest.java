@@ -0,0 +1,91 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jetbrains.pyscicomp.codeInsight.types;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class BinaryTypeDatabaseTest extends TestCase {
+
+  private File myFile;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myFile = File.createTempFile("types_db", ".bin");
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    myFile.delete();
+    super.tearDown();
+  }
+
+  private BinaryTypeDatabase createDatabase() throws IOException {
+    FunctionTypeInformation sort = new FunctionTypeInformation("numpy.core.fromnumeric.sort", "ndarray", Arrays.asList(
+      new ParameterTypeInformation("a", "array_like", Collections.<String>emptySet()),
+      new ParameterTypeInformation("kind", "{'quicksort', 'mergesort', 'heapsort'}, optional",
+                                   Arrays.asList("quicksort", "mergesort", "heapsort"))));
+    FunctionTypeInformation sum = new FunctionTypeInformation("numpy.core.fromnumeric.sum", "ndarray", Arrays.asList(
+      new ParameterTypeInformation("a", "array_like", Collections.<String>emptySet()),
+      new ParameterTypeInformation("axis", "int, optional", Collections.<String>emptySet())));
+    BinaryTypeDatabase.write(Arrays.asList(sum, sort), myFile);
+    return BinaryTypeDatabase.map(myFile);
+  }
+
+  public void testLookup() throws IOException {
+    BinaryTypeDatabase database = createDatabase();
+    assertEquals(2, database.size());
+    FunctionTypeInformation function = database.getFunction("numpy.core.fromnumeric.sort");
+    assertNotNull(function);
+    assertEquals("ndarray", function.getReturnType());
+    assertEquals("{'quicksort', 'mergesort', 'heapsort'}, optional", function.getParameterType("kind"));
+    assertNull(database.getFunction("numpy.core.fromnumeric.prod"));
+  }
+
+  public void testDecodedEntryIsReused() throws IOException {
+    BinaryTypeDatabase database = createDatabase();
+    FunctionTypeInformation first = database.getFunction("numpy.core.fromnumeric.sort");
+    FunctionTypeInformation second = database.getFunction("numpy.core.fromnumeric.sort");
+    assertSame(first, second);
+    assertSame(first.getParameters().get(1).getIndexedPermissibleValues(),
+               second.getParameters().get(1).getIndexedPermissibleValues());
+  }
+
+  public void testParameterIndexIsBuiltOnce() throws IOException {
+    BinaryTypeDatabase database = createDatabase();
+    FunctionTypeInformation function = database.getFunction("numpy.core.fromnumeric.sum");
+    assertNotNull(function);
+    assertNotNull(function.getParameter("axis"));
+    Object index = function.getParameterIndex();
+    FunctionTypeInformation again = database.getFunction("numpy.core.fromnumeric.sum");
+    assertNotNull(again);
+    assertNotNull(again.getParameter("p_axis"));
+    assertSame(index, again.getParameterIndex());
+  }
+
+  public void testVersionedCopySharesParameterIndex() throws IOException {
+    FunctionTypeInformation function = createDatabase().getFunction("numpy.core.fromnumeric.sum");
+    assertNotNull(function);
+    FunctionTypeInformation copy = function.withVersion("1.6.2");
+    assertSame(function.getParameterIndex(), copy.getParameterIndex());
+    assertEquals("1.6.2", copy.getVersion());
+  }
+}
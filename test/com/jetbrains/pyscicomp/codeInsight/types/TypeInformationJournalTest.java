@@ -0,0 +1,110 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jetbrains.pyscicomp.codeInsight.types;
+
+import junit.framework.TestCase;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+public class TypeInformationJournalTest extends TestCase {
+
+  private File myFile;
+  private TypeInformationJournal myJournal;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myFile = File.createTempFile("types_db", ".journal");
+    myJournal = new TypeInformationJournal(myFile);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    myFile.delete();
+    super.tearDown();
+  }
+
+  private static FunctionTypeInformation createFunction(String name) {
+    return new FunctionTypeInformation(name, "ndarray", Arrays.asList(
+      new ParameterTypeInformation("side", "{'left', 'right'}, optional", Arrays.asList("left", "right"))));
+  }
+
+  private void appendIntactRecords() throws IOException {
+    myJournal.append(Arrays.asList(TypeInformationJournal.Record.put(createFunction("numpy.searchsorted")),
+                                   TypeInformationJournal.Record.remove("numpy.sort")));
+  }
+
+  /**
+   * Appends a record of function which count of parameters is damaged.
+   */
+  private void appendDamagedRecord(int parameterCount) throws IOException {
+    DataOutputStream output = new DataOutputStream(new FileOutputStream(myFile, true));
+    try {
+      output.writeByte(1);
+      output.writeUTF("numpy.damaged");
+      output.writeBoolean(false);
+      output.writeInt(parameterCount);
+      output.writeBoolean(false);
+    }
+    finally {
+      output.close();
+    }
+  }
+
+  public void testReplay() throws IOException {
+    appendIntactRecords();
+    Map<String, FunctionTypeInformation> functions = new HashMap<String, FunctionTypeInformation>();
+    assertTrue(myJournal.replay(functions));
+    assertEquals(2, functions.size());
+    assertEquals("ndarray", functions.get("numpy.searchsorted").getReturnType());
+    assertTrue(functions.containsKey("numpy.sort"));
+    assertNull(functions.get("numpy.sort"));
+  }
+
+  public void testHugeCountInTrailingRecord() throws IOException {
+    checkDamagedTailIsTruncated(Integer.MAX_VALUE);
+  }
+
+  public void testNegativeCountInTrailingRecord() throws IOException {
+    checkDamagedTailIsTruncated(-1);
+  }
+
+  private void checkDamagedTailIsTruncated(int parameterCount) throws IOException {
+    appendIntactRecords();
+    long intactLength = myFile.length();
+    appendDamagedRecord(parameterCount);
+
+    Map<String, FunctionTypeInformation> functions = new HashMap<String, FunctionTypeInformation>();
+    assertFalse(myJournal.replay(functions));
+    assertEquals(2, functions.size());
+    assertFalse(functions.containsKey("numpy.damaged"));
+    assertEquals(intactLength, myFile.length());
+
+    // Records appended after truncation are readable
+    myJournal.append(Collections.singletonList(TypeInformationJournal.Record.put(createFunction("numpy.digitize"))));
+    functions.clear();
+    assertTrue(myJournal.replay(functions));
+    assertEquals(3, functions.size());
+    assertNotNull(functions.get("numpy.digitize"));
+  }
+}
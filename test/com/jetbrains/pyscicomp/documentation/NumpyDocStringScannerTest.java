@@ -0,0 +1,236 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jetbrains.pyscicomp.documentation;
+
+import junit.framework.TestCase;
+
+import java.util.List;
+
+/**
+ * Checks parsing of docstrings of numpy 1.6.2 routines.
+ */
+public class NumpyDocStringScannerTest extends TestCase {
+
+  private static final String HISTOGRAMDD =
+    "\n" +
+    "    Compute the multidimensional histogram of some data.\n" +
+    "\n" +
+    "    Parameters\n" +
+    "    ----------\n" +
+    "    sample : array_like\n" +
+    "        The data to be histogrammed. It must be an (N,D) array or data\n" +
+    "        that can be converted to such. The rows of the resulting array\n" +
+    "        are the coordinates of points in a D dimensional polytope.\n" +
+    "    bins : sequence or int, optional\n" +
+    "        The bin specification:\n" +
+    "\n" +
+    "        * A sequence of arrays describing the bin edges along each dimension.\n" +
+    "        * The number of bins for each dimension (nx, ny, ... =bins)\n" +
+    "        * The number of bins for all dimensions (nx=ny=...=bins).\n" +
+    "\n" +
+    "    range : sequence, optional\n" +
+    "        A sequence of lower and upper bin edges to be used if the edges are\n" +
+    "        not given explicitely in `bins`. Defaults to the minimum and maximum\n" +
+    "        values along each dimension.\n" +
+    "    normed : boolean, optional\n" +
+    "        If False, returns the number of samples in each bin. If True, returns\n" +
+    "        the bin density, ie, the bin count divided by the bin hypervolume.\n" +
+    "    weights : array_like (N,), optional\n" +
+    "        An array of values `w_i` weighing each sample `(x_i, y_i, z_i, ...)`.\n" +
+    "        Weights are normalized to 1 if normed is True. If normed is False, the\n" +
+    "        values of the returned histogram are equal to the sum of the weights\n" +
+    "        belonging to the samples falling into each bin.\n" +
+    "\n" +
+    "    Returns\n" +
+    "    -------\n" +
+    "    H : ndarray\n" +
+    "        The multidimensional histogram of sample x. See normed and weights for\n" +
+    "        the different possible semantics.\n" +
+    "    edges : list\n" +
+    "        A list of D arrays describing the bin edges for each dimension.\n" +
+    "\n" +
+    "    See Also\n" +
+    "    --------\n" +
+    "    histogram: 1-D histogram\n" +
+    "    histogram2d: 2-D histogram\n" +
+    "\n" +
+    "    Examples\n" +
+    "    --------\n" +
+    "    >>> r = np.random.randn(100,3)\n" +
+    "    >>> H, edges = np.histogramdd(r, bins = (5, 8, 4))\n" +
+    "    >>> H.shape, edges[0].size, edges[1].size, edges[2].size\n" +
+    "    ((5, 8, 4), 6, 9, 5)\n" +
+    "\n" +
+    "    ";
+
+  private static final String NDARRAY_SUM =
+    "a.sum(axis=None, dtype=None, out=None)\n" +
+    "\n" +
+    "    Return the sum of the array elements over the given axis.\n" +
+    "\n" +
+    "    Refer to `numpy.sum` for full documentation.\n" +
+    "\n" +
+    "    See Also\n" +
+    "    --------\n" +
+    "    numpy.sum : equivalent function\n" +
+    "\n" +
+    "    ";
+
+  private static final String CONCATENATE =
+    "concatenate((a1, a2, ...), axis=0)\n" +
+    "\n" +
+    "    Join a sequence of arrays together.\n" +
+    "\n" +
+    "    Parameters\n" +
+    "    ----------\n" +
+    "    a1, a2, ... : sequence of array_like\n" +
+    "        The arrays must have the same shape, except in the dimension\n" +
+    "        corresponding to `axis` (the first, by default).\n" +
+    "    axis : int, optional\n" +
+    "        The axis along which the arrays will be joined.  Default is 0.\n" +
+    "\n" +
+    "    Returns\n" +
+    "    -------\n" +
+    "    res : ndarray\n" +
+    "        The concatenated array.\n" +
+    "\n" +
+    "    ";
+
+  // Parameters described without types, as in docstrings of numpy.vectorize and numpy.frompyfunc
+  private static final String UNTYPED =
+    "\n" +
+    "    Apply a function to arguments.\n" +
+    "\n" +
+    "    Parameters\n" +
+    "    ----------\n" +
+    "    pyfunc : callable\n" +
+    "        A python function or method.\n" +
+    "    *args\n" +
+    "        Positional arguments of the function.\n" +
+    "    otypes\n" +
+    "        The output data type.\n" +
+    "\n" +
+    "    Returns\n" +
+    "    -------\n" +
+    "    out\n" +
+    "        Result of the function.\n" +
+    "    ";
+
+  public void testHistogramdd() {
+    NumpyDocStringScanner scanner = scan(HISTOGRAMDD);
+    assertNull(scanner.scanSignature());
+    assertNull(scanner.findRedirect());
+    scanner.indexSections();
+    assertTrue(scanner.hasParameters(NumpyDocStringScanner.PARAMETERS));
+    assertTrue(scanner.hasParameters(NumpyDocStringScanner.RETURNS));
+    assertParameters(scanner.parseParameters(NumpyDocStringScanner.PARAMETERS),
+                     "sample", "array_like",
+                     " The data to be histogrammed. It must be an (N,D) array or data" +
+                     " that can be converted to such. The rows of the resulting array" +
+                     " are the coordinates of points in a D dimensional polytope.",
+                     "bins", "sequence or int, optional",
+                     " The bin specification:" +
+                     " * A sequence of arrays describing the bin edges along each dimension." +
+                     " * The number of bins for each dimension (nx, ny, ... =bins)" +
+                     " * The number of bins for all dimensions (nx=ny=...=bins).",
+                     "range", "sequence, optional",
+                     " A sequence of lower and upper bin edges to be used if the edges are" +
+                     " not given explicitely in `bins`. Defaults to the minimum and maximum" +
+                     " values along each dimension.",
+                     "normed", "boolean, optional",
+                     " If False, returns the number of samples in each bin. If True, returns" +
+                     " the bin density, ie, the bin count divided by the bin hypervolume.",
+                     "weights", "array_like (N,), optional",
+                     " An array of values `w_i` weighing each sample `(x_i, y_i, z_i, ...)`." +
+                     " Weights are normalized to 1 if normed is True. If normed is False, the" +
+                     " values of the returned histogram are equal to the sum of the weights" +
+                     " belonging to the samples falling into each bin.");
+    assertParameters(scanner.parseParameters(NumpyDocStringScanner.RETURNS),
+                     "H", "ndarray",
+                     " The multidimensional histogram of sample x. See normed and weights for" +
+                     " the different possible semantics.",
+                     "edges", "list",
+                     " A list of D arrays describing the bin edges for each dimension.");
+  }
+
+  public void testFindParameter() {
+    NumpyDocStringScanner scanner = scan(HISTOGRAMDD);
+    scanner.scanSignature();
+    scanner.indexSections();
+    DocStringParameter parameter = scanner.findParameter(NumpyDocStringScanner.PARAMETERS, "normed");
+    assertNotNull(parameter);
+    assertEquals("boolean, optional", parameter.getType());
+    assertNull(scanner.findParameter(NumpyDocStringScanner.PARAMETERS, "H"));
+    assertNull(scanner.findParameter(NumpyDocStringScanner.PARAMETERS, "norm"));
+  }
+
+  public void testRedirect() {
+    NumpyDocStringScanner scanner = scan(NDARRAY_SUM);
+    assertEquals("a.sum(axis=None, dtype=None, out=None)", scanner.scanSignature());
+    assertEquals("numpy.sum", scanner.findRedirect());
+    scanner.indexSections();
+    assertFalse(scanner.hasParameters(NumpyDocStringScanner.PARAMETERS));
+    assertFalse(scanner.hasParameters(NumpyDocStringScanner.RETURNS));
+    assertTrue(scanner.parseParameters(NumpyDocStringScanner.PARAMETERS).isEmpty());
+  }
+
+  public void testSignatureAndSeveralNames() {
+    NumpyDocStringScanner scanner = scan(CONCATENATE);
+    assertEquals("concatenate((a1, a2, ...), axis=0)", scanner.scanSignature());
+    assertNull(scanner.findRedirect());
+    scanner.indexSections();
+    assertParameters(scanner.parseParameters(NumpyDocStringScanner.PARAMETERS),
+                     "a1, a2, ...", "sequence of array_like",
+                     " The arrays must have the same shape, except in the dimension" +
+                     " corresponding to `axis` (the first, by default).",
+                     "axis", "int, optional",
+                     " The axis along which the arrays will be joined.  Default is 0.");
+    assertParameters(scanner.parseParameters(NumpyDocStringScanner.RETURNS),
+                     "res", "ndarray", " The concatenated array.");
+  }
+
+  public void testParametersWithoutTypes() {
+    NumpyDocStringScanner scanner = scan(UNTYPED);
+    assertNull(scanner.scanSignature());
+    scanner.indexSections();
+    assertParameters(scanner.parseParameters(NumpyDocStringScanner.PARAMETERS),
+                     "pyfunc", "callable", " A python function or method.",
+                     "*args", "object", " Positional arguments of the function.",
+                     "otypes", "object", " The output data type.");
+    assertParameters(scanner.parseParameters(NumpyDocStringScanner.RETURNS),
+                     "out", "object", " Result of the function.");
+    DocStringParameter parameter = scanner.findParameter(NumpyDocStringScanner.PARAMETERS, "otypes");
+    assertNotNull(parameter);
+    assertEquals("object", parameter.getType());
+  }
+
+  private static NumpyDocStringScanner scan(String docString) {
+    return new NumpyDocStringScanner(docString);
+  }
+
+  /**
+   * Checks names, types and descriptions of parameters given as (name, type, description) triples.
+   */
+  private static void assertParameters(List<DocStringParameter> parameters, String... expected) {
+    assertEquals(expected.length / 3, parameters.size());
+    for (int i = 0; i < parameters.size(); i++) {
+      DocStringParameter parameter = parameters.get(i);
+      assertEquals(expected[3 * i], parameter.getName());
+      assertEquals(expected[3 * i], expected[3 * i + 1], parameter.getType());
+      assertEquals(expected[3 * i], expected[3 * i + 2], parameter.getDescription());
+    }
+  }
+}
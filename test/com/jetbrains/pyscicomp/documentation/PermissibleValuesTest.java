@@ -0,0 +1,65 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jetbrains.pyscicomp.documentation;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class PermissibleValuesTest extends TestCase {
+
+  public void testIgnoresCase() {
+    PermissibleValues values = PermissibleValues.create(Arrays.asList("left", "Right"));
+    assertTrue(values.containsIgnoreCase("left"));
+    assertTrue(values.containsIgnoreCase("LEFT"));
+    assertTrue(values.containsIgnoreCase("right"));
+    assertTrue(values.containsIgnoreCase("rIGHT"));
+    assertFalse(values.containsIgnoreCase("middle"));
+    assertFalse(values.containsIgnoreCase("lef"));
+  }
+
+  public void testAgreesWithEqualsIgnoreCase() {
+    // Characters which case mappings aren't symmetric: dotted and dotless i, Kelvin sign, final sigma
+    String[] values = {"\u0130", "\u0131", "i", "I", "\u212A", "k", "\u03C2", "\u03C3", "\u03A3", "stra\u00DFe"};
+    PermissibleValues permissibleValues = PermissibleValues.create(Arrays.asList(values));
+    for (String candidate : values) {
+      for (String value : values) {
+        PermissibleValues single = PermissibleValues.create(Collections.singleton(value));
+        assertEquals(candidate + " vs " + value, value.equalsIgnoreCase(candidate), single.containsIgnoreCase(candidate));
+      }
+      assertTrue(permissibleValues.containsIgnoreCase(candidate));
+    }
+  }
+
+  public void testKeepsOrderAndDropsDuplicates() {
+    PermissibleValues values = PermissibleValues.create(Arrays.asList("full", "valid", "full", "same"));
+    assertEquals(Arrays.asList("full", "valid", "same"), values.getValues());
+    assertEquals("[full, valid, same]", values.toString());
+  }
+
+  public void testEmpty() {
+    assertSame(PermissibleValues.EMPTY, PermissibleValues.create(Collections.<String>emptyList()));
+    assertTrue(PermissibleValues.fromNumpyDocType(null).isEmpty());
+    assertFalse(PermissibleValues.EMPTY.containsIgnoreCase(""));
+  }
+
+  public void testFromNumpyDocType() {
+    PermissibleValues values = PermissibleValues.fromNumpyDocType("{'quicksort', 'mergesort', 'heapsort'}, optional");
+    assertEquals(Arrays.asList("quicksort", "mergesort", "heapsort"), values.getValues());
+    assertTrue(values.containsIgnoreCase("MergeSort"));
+  }
+}
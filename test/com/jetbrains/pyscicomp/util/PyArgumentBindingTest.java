@@ -0,0 +1,184 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jetbrains.pyscicomp.util;
+
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.testFramework.fixtures.LightPlatformCodeInsightFixtureTestCase;
+import com.jetbrains.python.PythonFileType;
+import com.jetbrains.python.psi.*;
+import com.jetbrains.python.psi.impl.PythonLanguageLevelPusher;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Checks binding of arguments to parameters for calls of methods, keyword-only and packed parameters and
+ * parameters with "p_" prefix.
+ */
+public class PyArgumentBindingTest extends LightPlatformCodeInsightFixtureTestCase {
+
+  private static final String METHODS =
+    "class C(object):\n" +
+    "    def m(self, a, kind='quicksort'):\n" +
+    "        pass\n" +
+    "\n" +
+    "    @classmethod\n" +
+    "    def c(cls, a):\n" +
+    "        pass\n" +
+    "\n" +
+    "    @staticmethod\n" +
+    "    def s(a):\n" +
+    "        pass\n" +
+    "\n" +
+    "c = C()\n" +
+    "c.m(1, 'mergesort')\n" +
+    "C.m(c, 2)\n" +
+    "C.c(3)\n" +
+    "C.s(4)\n";
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    // Keyword-only parameters need Python 3 syntax
+    PythonLanguageLevelPusher.setForcedLanguageLevel(getProject(), LanguageLevel.PYTHON30);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    PythonLanguageLevelPusher.setForcedLanguageLevel(getProject(), null);
+    super.tearDown();
+  }
+
+  public void testMethodCalledThroughInstance() {
+    PsiFile file = configure(METHODS);
+    PyArgumentBinding binding = bind(file, "c.m(1, 'mergesort')", "m");
+    assertArgument(binding, "a", "1");
+    assertArgument(binding, "kind", "'mergesort'");
+    assertNull(binding.getArgument("self"));
+  }
+
+  public void testMethodCalledThroughClass() {
+    PsiFile file = configure(METHODS);
+    PyArgumentBinding binding = bind(file, "C.m(c, 2)", "m");
+    assertArgument(binding, "self", "c");
+    assertArgument(binding, "a", "2");
+    assertNull(binding.getArgument("kind"));
+  }
+
+  public void testClassMethod() {
+    PsiFile file = configure(METHODS);
+    PyArgumentBinding binding = bind(file, "C.c(3)", "c");
+    assertArgument(binding, "a", "3");
+    assertNull(binding.getArgument("cls"));
+  }
+
+  public void testStaticMethod() {
+    PsiFile file = configure(METHODS);
+    assertArgument(bind(file, "C.s(4)", "s"), "a", "4");
+  }
+
+  public void testKeywordOnlyParameters() {
+    PsiFile file = configure("def f(a, *, kind='quicksort', order=None):\n" +
+                             "    pass\n" +
+                             "\n" +
+                             "f(1, 'mergesort', kind='heapsort')\n");
+    PyArgumentBinding binding = bind(file, "f(1, 'mergesort', kind='heapsort')", "f");
+    assertArgument(binding, "a", "1");
+    // Positional arguments are never bound to keyword-only parameters
+    assertArgument(binding, "kind", "'heapsort'");
+    assertTrue(binding.hasParameter("order"));
+    assertNull(binding.getArgument("order"));
+    assertNull(binding.getParameterName(findArgument(file, "'mergesort'")));
+  }
+
+  public void testPackedArguments() {
+    PsiFile file = configure("def f(a, b, *args, **kwargs):\n" +
+                             "    pass\n" +
+                             "\n" +
+                             "f(1, 2, 3, b2='x')\n" +
+                             "f(*xs, b='y')\n");
+    PyArgumentBinding binding = bind(file, "f(1, 2, 3, b2='x')", "f");
+    assertArgument(binding, "a", "1");
+    assertArgument(binding, "b", "2");
+    assertFalse(binding.hasParameter("args"));
+    assertFalse(binding.hasParameter("kwargs"));
+    assertFalse(binding.hasParameter("b2"));
+    assertNull(binding.getParameterName(findArgument(file, "3")));
+
+    // Positions of arguments are unknown after *args of the call, but keywords still bind
+    binding = bind(file, "f(*xs, b='y')", "f");
+    assertNull(binding.getArgument("a"));
+    assertArgument(binding, "b", "'y'");
+  }
+
+  public void testPrefixedParameters() {
+    PsiFile file = configure("def f(p_kind, p_axis=None, axis=None):\n" +
+                             "    pass\n" +
+                             "\n" +
+                             "f('mergesort', p_axis=0)\n");
+    PyArgumentBinding binding = bind(file, "f('mergesort', p_axis=0)", "f");
+    assertArgument(binding, "p_kind", "'mergesort'");
+    assertArgument(binding, "kind", "'mergesort'");
+    assertEquals("p_kind", binding.getParameterName(findArgument(file, "'mergesort'")));
+    assertArgument(binding, "p_axis", "0");
+    // Unprefixed name of a parameter which exists itself is not folded
+    assertTrue(binding.hasParameter("axis"));
+    assertNull(binding.getArgument("axis"));
+  }
+
+  @NotNull
+  private PsiFile configure(@NotNull String text) {
+    return myFixture.configureByText(PythonFileType.INSTANCE, text);
+  }
+
+  @NotNull
+  private static PyArgumentBinding bind(@NotNull PsiFile file, @NotNull String callText, @NotNull String functionName) {
+    PyCallExpression call = null;
+    for (PyCallExpression candidate : PsiTreeUtil.findChildrenOfType(file, PyCallExpression.class)) {
+      if (callText.equals(candidate.getText())) {
+        call = candidate;
+      }
+    }
+    assertNotNull(callText, call);
+    PyFunction function = null;
+    for (PyFunction candidate : PsiTreeUtil.findChildrenOfType(file, PyFunction.class)) {
+      if (functionName.equals(candidate.getName())) {
+        function = candidate;
+      }
+    }
+    assertNotNull(functionName, function);
+    return PyArgumentBinding.bind(call, function);
+  }
+
+  @NotNull
+  private static PyExpression findArgument(@NotNull PsiFile file, @NotNull String argumentText) {
+    for (PyArgumentList arguments : PsiTreeUtil.findChildrenOfType(file, PyArgumentList.class)) {
+      for (PyExpression argument : arguments.getArguments()) {
+        if (argumentText.equals(argument.getText())) {
+          return argument;
+        }
+      }
+    }
+    fail(argumentText);
+    return null;
+  }
+
+  private static void assertArgument(@NotNull PyArgumentBinding binding, @NotNull String parameterName,
+                                     @NotNull String argumentText) {
+    PyExpression argument = binding.getArgument(parameterName);
+    assertNotNull(parameterName, argument);
+    assertEquals(parameterName, argumentText, argument.getText());
+  }
+}
@@ -0,0 +1,255 @@
+"""Builds the type database of numpy and scipy functions bundled with the plugin.
+
+Docstrings of all routines and class methods are parsed here, at build time, using docscrape, so
+the plugin doesn't have to parse them in the IDE. Redirects like "Refer to `numpy.sum` for full
+documentation." are resolved to the documentation of the target function. The result is written in
+the format of BinaryTypeDatabase: types are kept as they are written in docstrings, return type is
+"None" for functions returning nothing and "tuple" for functions returning several values.
+
+Functions are keyed by qualified names the way the plugin resolves them, i.e. by the module whose source
+file or skeleton defines them, e.g. numpy.core.multiarray.ndarray.sum. A sample of known names is read back
+from the written database to check it.
+
+The database must be built against the pinned versions of libraries listed in PINNED_VERSIONS.
+
+Usage: python build-bundled-types-db.py [output.bin], or build-bundled-types-db.sh to build against
+the pinned versions installed into a separate virtualenv.
+"""
+
+import imp
+import inspect
+import os
+import pkgutil
+import re
+import struct
+import sys
+from docscrape import NumpyDocString
+
+# Keep in sync with bundled-types-requirements.txt
+PINNED_VERSIONS = {"numpy": "1.6.2", "scipy": "0.11.0"}
+DEFAULT_OUTPUT = "../resources/types/bundled_types.bin"
+
+MAGIC = 0x50595444
+VERSION = 1
+NULL_STRING = -1
+
+REDIRECT = re.compile(r"^\s*Refer to `(.*)` for full documentation.\s*$", re.MULTILINE)
+NUMPY_UNION = re.compile(r"^\{(.*)\}$")
+QUOTED_STRING = re.compile(r"^(?:\"(.*)\")|(?:'(.*)')$")
+MAX_REDIRECTS = 5
+EXTENSION_SUFFIXES = [suffix for suffix, _, kind in imp.get_suffixes() if kind == imp.C_EXTENSION]
+
+# Qualified names as the plugin looks them up, checked to be present in the written database
+KNOWN_NAMES = [
+    "numpy.core.fromnumeric.sum",
+    "numpy.core.numeric.convolve",
+    "numpy.core.multiarray.array",
+    "numpy.core.multiarray.ndarray.sum",
+    "numpy.lib.function_base.histogram",
+    "scipy.signal.signaltools.convolve",
+]
+
+def checkVersions():
+    for name, version in PINNED_VERSIONS.iteritems():
+        module = __import__(name)
+        if module.__version__ != version:
+            print "Expected %s %s, found %s" % (name, version, module.__version__)
+            sys.exit(1)
+
+def importSubmodules(package):
+    modules = [package]
+    for _, name, _ in pkgutil.walk_packages(package.__path__, package.__name__ + "."):
+        try:
+            modules.append(__import__(name, fromlist=["__name__"]))
+        except Exception:
+            # Some submodules can't be imported, e.g. tests requiring nose
+            pass
+    return modules
+
+def resolveName(qualifiedName):
+    components = qualifiedName.split(".")
+    try:
+        obj = __import__(components[0])
+        for component in components[1:]:
+            obj = getattr(obj, component)
+        return obj
+    except (ImportError, AttributeError):
+        return None
+
+def getDocstring(obj):
+    doc = obj.__doc__
+    for _ in range(MAX_REDIRECTS):
+        if not doc:
+            return None
+        m = REDIRECT.search(doc)
+        if not m:
+            return doc
+        target = resolveName(m.group(1))
+        doc = target.__doc__ if target is not None else None
+    return None
+
+def extractPermissibleValues(typeString):
+    index = typeString.find(", optional")
+    if index >= 0:
+        typeString = typeString[:index]
+    m = NUMPY_UNION.match(typeString)
+    if m:
+        typeString = m.group(1)
+    values = []
+    for element in re.split(" *, *", typeString):
+        m = QUOTED_STRING.match(element)
+        if m:
+            value = m.group(1) if m.group(1) is not None else m.group(2)
+            if value is not None and value not in values:
+                values.append(value)
+    return values
+
+def parseFunction(qualifiedName, obj):
+    doc = getDocstring(obj)
+    if doc is None:
+        return None
+    try:
+        nds = NumpyDocString("    " + doc)
+    except Exception:
+        return None
+    parameters = [(name, type, extractPermissibleValues(type)) for name, type, _ in nds["Parameters"]]
+    returns = [type or "object" for _, type, _ in nds["Returns"]]
+    if not parameters and not returns:
+        return None
+    if not returns:
+        returnType = "None"
+    elif len(returns) == 1:
+        returnType = returns[0]
+    else:
+        returnType = "tuple"
+    return qualifiedName, returnType, parameters
+
+def isExtensionModule(module):
+    fileName = getattr(module, "__file__", None) or ""
+    return os.path.splitext(fileName)[1] in EXTENSION_SUFFIXES
+
+def getDefiningModule(module, obj):
+    """Returns name of module defining the object the way the plugin resolves it: Python functions and
+    classes belong to the module of their source file, while builtin ones belong to the extension module
+    whose skeleton defines them. Returns None if the object isn't defined in the module."""
+    if inspect.isfunction(obj) or (inspect.isclass(obj) and not isExtensionModule(module)):
+        moduleName = getattr(obj, "__module__", None)
+        return moduleName if moduleName == module.__name__ else None
+    if isExtensionModule(module):
+        return module.__name__
+    return None
+
+def collectFunctions():
+    functions = {}
+    def add(qualifiedName, obj):
+        if qualifiedName not in functions:
+            function = parseFunction(qualifiedName, obj)
+            if function is not None:
+                functions[qualifiedName] = function
+    for package in PINNED_VERSIONS:
+        for module in importSubmodules(__import__(package)):
+            for name, obj in inspect.getmembers(module):
+                if not (inspect.isroutine(obj) or inspect.isclass(obj)):
+                    continue
+                moduleName = getDefiningModule(module, obj)
+                if moduleName is None or not moduleName.startswith(package):
+                    continue
+                if inspect.isroutine(obj):
+                    add(moduleName + "." + name, obj)
+                else:
+                    # Inherited methods are resolved by the plugin to their defining classes
+                    for methodName in obj.__dict__:
+                        method = getattr(obj, methodName, None)
+                        if inspect.isroutine(method):
+                            add(moduleName + "." + obj.__name__ + "." + methodName, method)
+    return [functions[name] for name in sorted(functions)]
+
+class StringTable(object):
+    def __init__(self):
+        self.ids = {}
+        self.strings = []
+
+    def add(self, value):
+        if value is not None and value not in self.ids:
+            self.ids[value] = len(self.strings)
+            self.strings.append(value.encode("utf-8") if isinstance(value, unicode) else value)
+
+    def getId(self, value):
+        return self.ids[value] if value is not None else NULL_STRING
+
+def writeDatabase(functions, output):
+    strings = StringTable()
+    for name, returnType, parameters in functions:
+        strings.add(name)
+        strings.add(returnType)
+        for parameterName, parameterType, values in parameters:
+            strings.add(parameterName)
+            strings.add(parameterType)
+            for value in values:
+                strings.add(value)
+
+    offset = 12 + 4 * len(strings.strings) + 4 + 8 * len(functions)
+    stringOffsets = []
+    for s in strings.strings:
+        stringOffsets.append(offset)
+        offset += 4 + len(s)
+    entryOffsets = []
+    for _, _, parameters in functions:
+        entryOffsets.append(offset)
+        offset += 8
+        for _, _, values in parameters:
+            offset += 12 + 4 * len(values)
+
+    data = [struct.pack(">iii", MAGIC, VERSION, len(strings.strings))]
+    data.extend(struct.pack(">i", o) for o in stringOffsets)
+    data.append(struct.pack(">i", len(functions)))
+    for (name, _, _), entryOffset in zip(functions, entryOffsets):
+        data.append(struct.pack(">ii", strings.getId(name), entryOffset))
+    for s in strings.strings:
+        data.append(struct.pack(">i", len(s)))
+        data.append(s)
+    for _, returnType, parameters in functions:
+        data.append(struct.pack(">ii", strings.getId(returnType), len(parameters)))
+        for parameterName, parameterType, values in parameters:
+            data.append(struct.pack(">iii", strings.getId(parameterName), strings.getId(parameterType), len(values)))
+            data.extend(struct.pack(">i", strings.getId(value)) for value in values)
+
+    directory = os.path.dirname(output)
+    if directory and not os.path.exists(directory):
+        os.makedirs(directory)
+    f = open(output, "wb")
+    f.write("".join(data))
+    f.close()
+
+def readDatabaseNames(path):
+    f = open(path, "rb")
+    data = f.read()
+    f.close()
+    magic, version, stringCount = struct.unpack_from(">iii", data, 0)
+    if magic != MAGIC or version != VERSION:
+        return set()
+    stringOffsets = struct.unpack_from(">%di" % stringCount, data, 12)
+    def readString(stringId):
+        offset = stringOffsets[stringId]
+        length, = struct.unpack_from(">i", data, offset)
+        return data[offset + 4:offset + 4 + length]
+    functionCount, = struct.unpack_from(">i", data, 12 + 4 * stringCount)
+    names = set()
+    for i in range(functionCount):
+        nameId, _ = struct.unpack_from(">ii", data, 12 + 4 * stringCount + 4 + 8 * i)
+        names.add(readString(nameId))
+    return names
+
+def checkKnownNames(path):
+    names = readDatabaseNames(path)
+    missing = [name for name in KNOWN_NAMES if name not in names]
+    if missing:
+        print "Functions missing in the database: " + ", ".join(missing)
+        sys.exit(1)
+
+checkVersions()
+output = sys.argv[1] if len(sys.argv) > 1 else DEFAULT_OUTPUT
+functions = collectFunctions()
+writeDatabase(functions, output)
+checkKnownNames(output)
+print "Written " + str(len(functions)) + " functions to " + output
@@ -0,0 +1,25 @@
+#!/bin/sh
+# Builds resources/types/bundled_types.bin against the pinned versions of numpy and scipy
+# installed into a separate virtualenv, so that the result doesn't depend on libraries of the host.
+#
+# Usage: tools/build-bundled-types-db.sh [virtualenv directory]
+#
+# Requires Python 2 with virtualenv and the build dependencies of numpy and scipy (a Fortran
+# compiler, BLAS and LAPACK).
+
+set -e
+
+TOOLS=$(cd "$(dirname "$0")" && pwd)
+ENV=${1:-"$TOOLS/../build/bundled-types-env"}
+OUTPUT="$TOOLS/../resources/types/bundled_types.bin"
+
+if [ ! -x "$ENV/bin/python" ]; then
+  virtualenv --python=python2 "$ENV"
+fi
+# numpy must be installed before scipy builds against it
+"$ENV/bin/pip" install $(grep '^numpy==' "$TOOLS/bundled-types-requirements.txt")
+"$ENV/bin/pip" install -r "$TOOLS/bundled-types-requirements.txt"
+
+mkdir -p "$(dirname "$OUTPUT")"
+cd "$TOOLS"
+"$ENV/bin/python" build-bundled-types-db.py "$OUTPUT"
@@ -0,0 +1,28 @@
+"""Dumps docstrings of numpy routines and class methods into a JSON corpus for NumpyDocStringBenchmark.
+
+Usage: python dump-numpy-docstrings.py [output.json]
+"""
+
+import numpy
+import json
+import sys
+from inspect import *
+
+def collectDocstrings():
+    docstrings = []
+    for name, f in getmembers(numpy):
+        if isroutine(f):
+            if f.__doc__:
+                docstrings.append({"name": "numpy." + name, "docstring": f.__doc__})
+        elif isclass(f):
+            for methodName, m in getmembers(f):
+                if isroutine(m) and m.__doc__:
+                    docstrings.append({"name": "numpy." + name + "." + methodName, "docstring": m.__doc__})
+    return docstrings
+
+output = sys.argv[1] if len(sys.argv) > 1 else "numpy_docstrings.json"
+docstrings = collectDocstrings()
+f = open(output, "w")
+json.dump(docstrings, f, indent=1)
+f.close()
+print "Dumped " + str(len(docstrings)) + " docstrings of numpy " + numpy.__version__ + " to " + output